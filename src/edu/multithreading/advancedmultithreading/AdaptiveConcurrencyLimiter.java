@@ -0,0 +1,172 @@
+package edu.multithreading.advancedmultithreading;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+A concurrency limit that tunes itself from the latency it observes, instead of a hard-coded guess like Semaphore(3)
+or newFixedThreadPool(3).
+
+The idea (the "gradient" algorithm, close to TCP Vegas):
+
+	•	Every finished request gives a sample: its latency divided by its cost (SegmentedSieve.estimatedCost(n)), the
+	    time per unit of work. The compute time of the nth prime varies by orders of magnitude with n; the raw latency
+	    of a large n after a run of small ones would look like congestion and cut the limit, and a mixed workload
+	    would spiral down to minLimit. Per unit of work, the only thing left that makes a request slower is waiting:
+	    for a core, or for another thread.
+	•	minRtt is the best time per unit seen recently: what a request costs when nothing is queueing.
+	•	gradient = clamp(TOLERANCE * minRtt / rtt, 0.5, 1.0), with rtt the sample's time per unit.
+	    While latency stays near minRtt the gradient is 1, and the limit grows by about √limit per adjustment.
+	    Once requests start to slow down (CPU oversubscribed, threads waiting for each other) the gradient drops below 1
+	    and the limit is multiplied down.
+	•	The limit only grows while it is actually being used (at least half of it in flight). An idle system gives
+	    no evidence that more concurrency would help.
+	•	minRtt is forgotten every PROBE_INTERVAL samples, so the limiter notices if the baseline itself changed.
+
+The latency of a request is measured from the moment it gets its permit until release(), so time spent waiting for a
+permit does not count. Otherwise a full queue would keep shrinking the limit, which keeps the queue full.
+
+A request answered from the PrimeTable did no work its cost could describe: report a cost of 0, and it gives no sample.
+
+Two ways to use it:
+
+	1.	As a drop-in for a Semaphore: acquire() / release(cost) from the same thread. The start time is kept in a
+	    ThreadLocal (see ThreadLocalDemoMain), so callers don't have to pass anything around. Plain release() counts
+	    every request as one unit of work, which is only right when all requests cost about the same.
+	2.	As a pool-sizing policy: report the latency and cost of each task with record(), and call resize(pool) now and
+	    then to set the pool's core and maximum size to the current limit.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final double TOLERANCE = 1.5; //Latency up to 1.5x the best is still "flat".
+    private static final double SMOOTHING = 0.2; //How far each sample moves the limit towards its new target.
+    private static final int PROBE_INTERVAL = 500;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Lock lock = new ReentrantLock(true); //Fair, like the Semaphore(3, true) it replaces.
+    private final Condition permitAvailable = lock.newCondition();
+    private final ThreadLocal<Long> acquiredAt = new ThreadLocal<>();
+
+    private double limit;
+    private int inFlight;
+    private double minRtt = Double.MAX_VALUE; //Nanoseconds per unit of cost.
+    private int samplesSinceProbe;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                permitAvailable.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        acquiredAt.set(System.nanoTime());
+    }
+
+    public void acquireUninterruptibly() {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                permitAvailable.awaitUninterruptibly();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        acquiredAt.set(System.nanoTime());
+    }
+
+    //Must be called by the thread that acquired the permit.
+    public void release() {
+        release(1);
+    }
+
+    //cost is the work the request did, e.g. SegmentedSieve.estimatedCost(n), or 0 if it did none worth measuring.
+    public void release(long cost) {
+        Long start = acquiredAt.get();
+        acquiredAt.remove();
+        lock.lock();
+        try {
+            inFlight--;
+            if (start != null && cost > 0) {
+                adjust(System.nanoTime() - start, cost, inFlight + 1);
+            }
+            permitAvailable.signalAll(); //The limit may have grown by more than one permit.
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //A latency sample from outside (pool-sizing mode). inFlight is how many tasks were running at the time, cost as
+    //for release(cost).
+    public void record(long rttNanos, long cost, int inFlight) {
+        if (cost <= 0) return;
+        lock.lock();
+        try {
+            adjust(rttNanos, cost, inFlight);
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Pool-sizing mode: makes the pool's size follow the limit. The order of the two calls matters, the core size may
+    //never be set above the maximum size.
+    public void resize(ThreadPoolExecutor pool) {
+        int size = getLimit();
+        if (size > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        } else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
+    }
+
+    //Called with the lock held.
+    private void adjust(long latency, long cost, int inFlight) {
+        double rtt = (double) Math.max(latency, 1) / cost;
+        if (++samplesSinceProbe >= PROBE_INTERVAL) {
+            samplesSinceProbe = 0;
+            minRtt = rtt;
+        } else {
+            minRtt = Math.min(minRtt, rtt);
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minRtt / rtt));
+        if (gradient == 1.0 && inFlight * 2 < limit) {
+            return; //Latency is fine, but we aren't using the permits we have, so no reason to add more.
+        }
+        double target = limit * gradient + (gradient == 1.0 ? Math.sqrt(limit) : 0);
+        limit = Math.max(minLimit, Math.min(maxLimit, (1 - SMOOTHING) * limit + SMOOTHING * target));
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("limit %.1f, in flight %d, min rtt %.3f ns per unit of cost", limit, inFlight,
+                    minRtt == Double.MAX_VALUE ? 0.0 : minRtt);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package edu.multithreading.advancedmultithreading;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Admission control: decide up front how much work we accept, instead of starting a thread for every request.
+
+SemaphoresDemoMain used to start a new Thread per request and let the Semaphore park all but 3 of them. Every parked
+thread still holds its stack, so a burst of requests turns into thousands of idle platform threads. Here:
+
+	1.	Concurrency limit: a fixed number of worker threads run the tasks (the same job the semaphore permits did).
+	2.	Bounded pending queue: requests that can't run yet wait in an ArrayBlockingQueue of fixed capacity, which costs
+	    one slot per request instead of one thread.
+	3.	Overload policy, for when the queue is full as well:
+	    •	REJECT: the request fails right away with a RejectedExecutionException.
+	    •	CALLER_RUNS: the submitting thread runs the task itself. This slows the producer down (backpressure).
+	    •	DROP_OLDEST: the request that has waited longest is thrown away to make room for the new one.
+
+These are the ThreadPoolExecutor's own RejectedExecutionHandlers (AbortPolicy, CallerRunsPolicy, DiscardOldestPolicy),
+wrapped so that every rejection and drop is counted. Memory stays flat however big the burst: at most
+concurrency + queueCapacity requests are held at any time.
+ */
+public class AdmissionController implements AutoCloseable {
+
+    public enum OverloadPolicy {
+        REJECT, CALLER_RUNS, DROP_OLDEST
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final ArrayBlockingQueue<Runnable> queue;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+
+    public AdmissionController(int concurrency, int queueCapacity, OverloadPolicy policy) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, queue,
+                handlerFor(policy));
+    }
+
+    private RejectedExecutionHandler handlerFor(OverloadPolicy policy) {
+        return switch (policy) {
+            case REJECT -> (task, pool) -> {
+                rejected.increment();
+                throw new RejectedExecutionException("Admission queue full, request rejected");
+            };
+            case CALLER_RUNS -> (task, pool) -> {
+                if (pool.isShutdown()) {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Admission controller is closed");
+                }
+                callerRuns.increment();
+                task.run();
+            };
+            case DROP_OLDEST -> (task, pool) -> {
+                if (pool.isShutdown()) {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Admission controller is closed");
+                }
+                if (pool.getQueue().poll() != null) {
+                    dropped.increment();
+                }
+                pool.execute(task);
+            };
+        };
+    }
+
+    // Hands the task to a worker, queues it, or applies the overload policy. With REJECT (and after close()) this
+    // throws RejectedExecutionException.
+    public void submit(Runnable task) {
+        submitted.increment();
+        executor.execute(task);
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    public int activeCount() {
+        return executor.getActiveCount();
+    }
+
+    // Requests handed to submit(), including the ones that were rejected or dropped afterwards.
+    public long submittedCount() {
+        return submitted.sum();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long callerRunsCount() {
+        return callerRuns.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "queue depth " + queueDepth() + ", active " + activeCount() + ", submitted " + submittedCount()
+                + ", rejected " + rejectedCount() + ", dropped " + droppedCount() + ", ran by caller " + callerRunsCount();
+    }
+
+    // Stops admitting requests and waits for the queued ones to finish. If the waiting thread is interrupted, the
+    // remaining work is interrupted too (shutdownNow) and the interrupt flag is kept.
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -31,29 +31,45 @@ it. The shared resource is a bounded buffer (queue) that limits the number of it
 handle the synchronization between producer and consumer threads.
  */
 
-import java.util.LinkedList;
-import java.util.Queue;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-class ProducerConsumerExample {
+class ProducerConsumerExample implements ProducerConsumerBuffer {
 
-    private final Queue<Integer> queue = new LinkedList<>();
-    private final int capacity = 10;  // Maximum capacity of the queue
+    // The queue is a ring of primitive ints: items[head] is the oldest item, and the count items after it (wrapping
+    // around at the end of the array) are the rest. A LinkedList<Integer> would allocate a node and box an Integer for
+    // every item, this never allocates after the constructor.
+    private final int[] items;
+    private int head;
+    private int count;
+    private final int capacity;  // Maximum capacity of the queue
+    private final boolean verbose; // Printing inside the lock is fine for the demo, but not when we benchmark it.
     private final Lock lock = new ReentrantLock();
     private final Condition notFull = lock.newCondition();
     private final Condition notEmpty = lock.newCondition();
 
+    ProducerConsumerExample() {
+        this(10, true);
+    }
+
+    ProducerConsumerExample(int capacity, boolean verbose) {
+        this.items = new int[capacity];
+        this.capacity = capacity;
+        this.verbose = verbose;
+    }
+
     // Producer method
+    @Override
     public void produce(int item) throws InterruptedException {
         lock.lock();
         try {
-            while (queue.size() == capacity) {
+            while (count == capacity) {
                 notFull.await(); // Wait until there is space in the queue
             }
-            queue.add(item);
-            System.out.println("Produced: " + item);
+            items[wrap(head + count)] = item;
+            count++;
+            if (verbose) System.out.println("Produced: " + item);
             notEmpty.signal(); // Notify that the queue is not empty
         } finally {
             lock.unlock();
@@ -61,21 +77,85 @@ class ProducerConsumerExample {
     }
 
     // Consumer method
-    public void consume() throws InterruptedException {
+    @Override
+    public int consume() throws InterruptedException {
         lock.lock();
         try {
-            while (queue.isEmpty()) {
+            while (count == 0) {
                 notEmpty.await(); // Wait until there is an item to consume
             }
-            int item = queue.poll();
-            System.out.println("Consumed: " + item);
+            int item = items[head];
+            head = wrap(head + 1);
+            count--;
+            if (verbose) System.out.println("Consumed: " + item);
             notFull.signal(); // Notify that the queue is not full
+            return item;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Batch producer: the whole slice goes in under one lock acquisition, copied with System.arraycopy, and waiting
+    // consumers are woken once per batch instead of once per item. If the slice doesn't fit, we hand over what we
+    // have written so far (signalAll, so every waiting consumer can take a share) and wait for room.
+    @Override
+    public void produceAll(int[] source, int offset, int length) throws InterruptedException {
+        lock.lock();
+        try {
+            while (length > 0) {
+                while (count == capacity) {
+                    notFull.await();
+                }
+                int n = Math.min(length, capacity - count);
+                int tail = wrap(head + count);
+                int first = Math.min(n, capacity - tail); // Up to the end of the array, the rest wraps to the start.
+                System.arraycopy(source, offset, items, tail, first);
+                System.arraycopy(source, offset + first, items, 0, n - first);
+                count += n;
+                offset += n;
+                length -= n;
+                if (verbose) System.out.println("Produced a batch of " + n);
+                notEmpty.signalAll();
+            }
         } finally {
             lock.unlock();
         }
     }
+
+    // Batch consumer: waits until there is at least one item, then takes everything there is (up to maxItems) in one
+    // go and wakes the waiting producers once.
+    @Override
+    public int drainTo(int[] target, int offset, int maxItems) throws InterruptedException {
+        lock.lock();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            int n = Math.min(count, maxItems);
+            int first = Math.min(n, capacity - head);
+            System.arraycopy(items, head, target, offset, first);
+            System.arraycopy(items, 0, target, offset + first, n - first);
+            head = wrap(head + n);
+            count -= n;
+            if (verbose) System.out.println("Consumed a batch of " + n);
+            notFull.signalAll();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int wrap(int index) {
+        return index >= capacity ? index - capacity : index;
+    }
 }
 public class ConditionInterfaceDemo {
+
+    //ProducerConsumerExample lives in this file, so other classes (see ProducerConsumerBenchmark) get it through here.
+    static ProducerConsumerBuffer newProducerConsumerExample(int capacity, boolean verbose) {
+        return new ProducerConsumerExample(capacity, verbose);
+    }
+
     public static void main(String[] args) {
         ProducerConsumerExample pc = new ProducerConsumerExample();
 
@@ -123,10 +203,14 @@ Explanation:
         •	Acquires the lock and checks if the queue is empty.
         •	If empty, it calls notEmpty.await(), which releases the lock and waits.
         •	When items become available, it removes an item from the queue and signals notFull to wake up any waiting producers.
-	4.	Synchronization:
+	4.	Batches:
+        •	produceAll() and drainTo() move a whole slice of ints per lock acquisition, and signal once per batch
+            (signalAll, since a batch can be enough for several waiting threads) instead of once per item.
+	5.	Synchronization:
         •	await() releases the lock and waits for a signal.
         •	signal() wakes up one waiting thread.
-        •	signalAll() wakes up all waiting threads (not used in this example but useful in other scenarios).
+        •	signalAll() wakes up all waiting threads (used by the batch methods above: one batch can be enough for
+            several of them; the single-item produce() and consume() still use signal()).
 
 Summary
 
@@ -3,6 +3,8 @@ package edu.multithreading.advancedmultithreading;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+//SynchronisationDemoMain's Counter with an explicit ReentrantLock instead of synchronized (this). counters.LockCounter
+//uses the same lock for counting only, CounterBenchmark shows how it compares with lock-free counters.
 class Counter implements Runnable {
     private int value = 0;
 
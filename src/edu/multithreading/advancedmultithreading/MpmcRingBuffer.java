@@ -0,0 +1,162 @@
+package edu.multithreading.advancedmultithreading;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+A bounded multi-producer/multi-consumer queue of ints without any lock (Dmitry Vyukov's bounded MPMC queue).
+
+ProducerConsumerExample guards its queue with one ReentrantLock. Every produce() and consume() takes that lock, so
+producers and consumers queue up behind each other, and a waiting thread has to be signalled and rescheduled before it
+can go on. Here:
+
+	1.	A ring of capacity slots (a power of two, so the slot of position p is p & (capacity - 1)). Every slot holds its
+	    value and a sequence number, which says whose turn it is:
+	    •	sequence == p: the slot is free for the producer of position p.
+	    •	sequence == p + 1: the slot holds the item of position p, the consumer of position p may take it.
+	    A consumer that takes the item sets the sequence to p + capacity, which frees the slot for the producer one lap
+	    later.
+	2.	Producers claim positions with a compareAndSet on the producer cursor, consumers on the consumer cursor. The
+	    value is written first and the sequence with a release store after it, so a consumer that sees the new
+	    sequence (acquire load) also sees the value. Producers only contend with producers and consumers with
+	    consumers, and only for the moment of one CAS.
+	3.	No false sharing: each slot gets a cache line of its own (8 longs), and the two cursors sit on separate cache
+	    lines too. Otherwise a producer writing one slot would keep invalidating the line a consumer is reading the
+	    neighbouring slot from.
+	4.	Nothing is allocated per item: values are stored as primitives in the slot.
+
+offer() and poll() never wait. produce() and consume() wait on a full or empty buffer with the WaitStrategy chosen:
+
+	•	SPIN: busy-wait with Thread.onSpinWait(). Lowest latency, but burns a core, only sensible with a core per thread.
+	•	YIELD: spin briefly, then Thread.yield() so other threads get the core.
+	•	PARK: spin, yield, then sleep with LockSupport.parkNanos, backing off up to MAX_PARK_NANOS. Nobody has to signal
+	    the sleeper, which keeps the fast path free of any wake-up bookkeeping, at the price of a wake-up delay of up to
+	    MAX_PARK_NANOS when the buffer stays full or empty for a while.
+ */
+public class MpmcRingBuffer implements ProducerConsumerBuffer {
+    public static final long EMPTY = Long.MIN_VALUE;
+
+    private static final int SLOT_STRIDE = 8; //Longs per slot: a 64 byte cache line.
+    private static final int PRODUCER = 7, CONSUMER = 15; //Cursor indexes, a cache line apart from each other.
+    private static final long MAX_PARK_NANOS = 100_000;
+
+    public enum WaitStrategy {
+        SPIN, YIELD, PARK;
+
+        //Called with how many times we have already waited, returns the new count.
+        int idle(int attempts) throws InterruptedException {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (this == SPIN || attempts < 100) {
+                Thread.onSpinWait();
+            } else if (this == YIELD || attempts < 200) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(attempts - 200, 7)));
+            }
+            return attempts + 1;
+        }
+    }
+
+    private final AtomicLongArray slots; //slot i: sequence at i * SLOT_STRIDE, value at i * SLOT_STRIDE + 1.
+    private final AtomicLongArray cursors = new AtomicLongArray(24);
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    public MpmcRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, got " + capacity);
+        }
+        this.slots = new AtomicLongArray((capacity + 1) * SLOT_STRIDE); //One extra line keeps the last slot apart.
+        for (int i = 0; i < capacity; i++) {
+            slots.set(i * SLOT_STRIDE, i);
+        }
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    // Adds the item if there is room, without waiting.
+    public boolean offer(int item) {
+        long position = cursors.get(PRODUCER);
+        while (true) {
+            int slot = (int) (position & mask) * SLOT_STRIDE;
+            long difference = slots.getAcquire(slot) - position;
+            if (difference == 0) {
+                if (cursors.weakCompareAndSetVolatile(PRODUCER, position, position + 1)) {
+                    slots.setPlain(slot + 1, item);
+                    slots.setRelease(slot, position + 1);
+                    return true;
+                }
+                position = cursors.get(PRODUCER); //Another producer got this position first.
+            } else if (difference < 0) {
+                return false; //The consumer of the previous lap hasn't freed this slot: full.
+            } else {
+                position = cursors.get(PRODUCER); //We were behind, another producer already filled this slot.
+            }
+        }
+    }
+
+    // The oldest item, or EMPTY if there is none, without waiting.
+    public long poll() {
+        long position = cursors.get(CONSUMER);
+        while (true) {
+            int slot = (int) (position & mask) * SLOT_STRIDE;
+            long difference = slots.getAcquire(slot) - (position + 1);
+            if (difference == 0) {
+                if (cursors.weakCompareAndSetVolatile(CONSUMER, position, position + 1)) {
+                    long item = slots.getPlain(slot + 1);
+                    slots.setRelease(slot, position + mask + 1);
+                    return (int) item;
+                }
+                position = cursors.get(CONSUMER);
+            } else if (difference < 0) {
+                return EMPTY; //The producer of this position hasn't published yet.
+            } else {
+                position = cursors.get(CONSUMER);
+            }
+        }
+    }
+
+    @Override
+    public void produce(int item) throws InterruptedException {
+        for (int attempts = 0; !offer(item); ) {
+            attempts = waitStrategy.idle(attempts);
+        }
+    }
+
+    @Override
+    public int consume() throws InterruptedException {
+        long item;
+        for (int attempts = 0; (item = poll()) == EMPTY; ) {
+            attempts = waitStrategy.idle(attempts);
+        }
+        return (int) item;
+    }
+
+    // Producers don't have to wake anybody, so a batch is simply one offer() per item.
+    @Override
+    public void produceAll(int[] items, int offset, int length) throws InterruptedException {
+        for (int i = offset; i < offset + length; i++) {
+            for (int attempts = 0; !offer(items[i]); ) {
+                attempts = waitStrategy.idle(attempts);
+            }
+        }
+    }
+
+    // Waits for the first item only, then takes whatever else is there without waiting.
+    @Override
+    public int drainTo(int[] target, int offset, int maxItems) throws InterruptedException {
+        if (maxItems <= 0) return 0;
+        target[offset] = consume();
+        int n = 1;
+        for (long item; n < maxItems && (item = poll()) != EMPTY; n++) {
+            target[offset + n] = (int) item;
+        }
+        return n;
+    }
+
+    // Items in the buffer right now, only a hint while producers and consumers are running.
+    public int size() {
+        long size = cursors.get(PRODUCER) - cursors.get(CONSUMER);
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+}
@@ -1,7 +1,11 @@
 package edu.multithreading.advancedmultithreading;
 
 import edu.multithreading.advancedmultithreading.executorservice.PrimeNumberUtil;
+import edu.multithreading.nthprime.PrimeTable;
+import edu.multithreading.nthprime.SegmentedSieve;
+import edu.multithreading.sink.ResultSink;
 
+import java.util.Arrays;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveTask;
 
@@ -9,49 +13,115 @@ import java.util.concurrent.RecursiveTask;
 //Calculate nth prime (where n is value of i in that array arr[i])
 //Add all the nth primes.
 
-class CalculatePrimeTask extends RecursiveTask<Integer> {
-    int[] array;
-    int start;
-    int end;
-    
+//Splitting by index (half the elements each) works badly here: the cost of the nth prime grows faster than n, so one
+//half can hold nearly all the work while the other finishes immediately and goes stealing tiny tasks. Instead we split
+//where the estimated cost is halved, and stop splitting once a range is cheap enough (the sequential threshold) to not be
+//worth the overhead of another task. The sum is a long, an int overflows after a handful of large primes.
+class CalculatePrimeTask extends RecursiveTask<Long> {
+    private static final long serialVersionUID = 1L;
+    static final long SEQUENTIAL_THRESHOLD = 1 << 20; //About a millisecond of sieving.
+
+    final int[] array;
+    final long[] costBefore; //costBefore[i] is the estimated cost of array[0..i-1], shared by all subtasks.
+    final int start;
+    final int end;
+
     public CalculatePrimeTask(int[] array, int start, int end) {
+        this(array, prefixCosts(array), start, end);
+    }
+
+    private CalculatePrimeTask(int[] array, long[] costBefore, int start, int end) {
         this.array = array;
+        this.costBefore = costBefore;
         this.start = start;
         this.end = end;
     }
-    
-    @Override
-    protected Integer compute() {
-        if (start == end) {
-            System.out.println(array[start]+" :"+PrimeNumberUtil.calculatePrime(array[start]));
-            return PrimeNumberUtil.calculatePrime(array[start]);
+
+    private static long[] prefixCosts(int[] array) {
+        long[] costBefore = new long[array.length + 1];
+        for (int i = 0; i < array.length; i++) {
+            costBefore[i + 1] = costBefore[i] + SegmentedSieve.estimatedCost(array[i]);
         }
+        return costBefore;
+    }
 
-        if (end - start == 1){
-            System.out.println(array[start]+" :"+PrimeNumberUtil.calculatePrime(array[start]));
-            System.out.println(array[end]+" :"+PrimeNumberUtil.calculatePrime(array[end]));
-            return PrimeNumberUtil.calculatePrime(array[start])+PrimeNumberUtil.calculatePrime(array[end]);
+    @Override
+    protected Long compute() {
+        long cost = costBefore[end + 1] - costBefore[start];
+        if (start == end || cost <= SEQUENTIAL_THRESHOLD) {
+            return computeSequentially();
         }
 
-        int mid = (start+end)/2;
-        CalculatePrimeTask subTask1 = new CalculatePrimeTask(array, start, mid);
-        CalculatePrimeTask subTask2 = new CalculatePrimeTask(array, mid + 1, end);
+        //First index whose cumulative cost reaches the middle of this range, kept inside [start, end - 1] so that both
+        //halves get at least one element.
+        long half = costBefore[start] + cost / 2;
+        int low = start, high = end - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (costBefore[mid + 1] < half) low = mid + 1;
+            else high = mid;
+        }
+        CalculatePrimeTask subTask1 = new CalculatePrimeTask(array, costBefore, start, low);
+        CalculatePrimeTask subTask2 = new CalculatePrimeTask(array, costBefore, low + 1, end);
         invokeAll(subTask1, subTask2);
         return subTask1.join() + subTask2.join();
+    }
 
+    private long computeSequentially() {
+        int[] slice = Arrays.copyOfRange(array, start, end + 1);
+        int max = Arrays.stream(slice).max().getAsInt();
+        //Answers the shared table already holds are looked up. Otherwise the leaf sieves its own slice, one sorted pass
+        //up to its largest n: growing the shared table instead would make the leaves take turns on its growLock, each
+        //one blocking a pool worker, and the cost-balanced split would buy almost no parallelism.
+        int[] primes = max <= PrimeTable.shared().size()
+                ? PrimeNumberUtil.calculatePrimes(slice)
+                : SegmentedSieve.nthPrimes(slice);
+        //Printed through the sink: a println here would make the pool's workers take turns on System.out's lock.
+        ResultSink results = ResultSink.console();
+        long sum = 0;
+        for (int i = 0; i < slice.length; i++) {
+            results.emit(slice[i]+" :"+primes[i]);
+            sum += primes[i];
+        }
+        return sum;
     }
 }
 
 public class PrimeNumbersWithForkJoin {
+    private final ForkJoinPool forkJoinPool;
+
+    public PrimeNumbersWithForkJoin() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    //A caller-supplied pool, e.g. new ForkJoinPool(parallelism), instead of always sharing the common pool.
+    public PrimeNumbersWithForkJoin(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public long sumOfPrimes(int[] inputNumbers) {
+        if (inputNumbers.length == 0) return 0;
+        return forkJoinPool.invoke(new CalculatePrimeTask(inputNumbers, 0, inputNumbers.length - 1));
+    }
+
     public void runForkJoinExample(){
         int[] inputNumbers = {2,3,4,5,6,7,8,9,10};
-        ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
-        CalculatePrimeTask calculatePrimeTask = new CalculatePrimeTask(inputNumbers, 0, inputNumbers.length - 1);
-        Integer result = forkJoinPool.invoke(calculatePrimeTask);
-        System.out.println("Sum of prime numbers: " + result);
+        long result = sumOfPrimes(inputNumbers);
+        //Through the sink as well, behind the lines of the tasks: printed directly, it could overtake them.
+        ResultSink.console().emit("Sum of prime numbers: " + result);
     }
 
+    //Optional first argument: the parallelism of a dedicated pool. Without it the common pool is used.
     public static void main(String[] args) {
-        new PrimeNumbersWithForkJoin().runForkJoinExample();
+        if (args.length > 0) {
+            ForkJoinPool pool = new ForkJoinPool(Integer.parseInt(args[0]));
+            try {
+                new PrimeNumbersWithForkJoin(pool).runForkJoinExample();
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            new PrimeNumbersWithForkJoin().runForkJoinExample();
+        }
     }
 }
@@ -0,0 +1,123 @@
+package edu.multithreading.advancedmultithreading;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+Moves the same number of ints through every ProducerConsumerBuffer, with several producers and consumers at once, and
+prints the throughput.
+
+	•	lock+conditions: ProducerConsumerExample, one ReentrantLock with notFull/notEmpty (printing switched off).
+	•	ring-spin / ring-yield / ring-park: MpmcRingBuffer with each of its wait strategies.
+
+Every buffer runs twice: one item per call (produce/consume), and in batches of batch items (produceAll/drainTo).
+Each producer sends items / producers values and each consumer takes items / consumers, and the sum of everything
+consumed is checked against the sum produced, so a buffer that loses or duplicates items is caught. The spinning
+strategies need a core per thread; with more threads than cores they mostly measure the scheduler.
+
+Arguments (all optional): items=2000000 capacity=1024 batch=64 threads=1x1,2x2,4x4 runs=3 (threads is producers x consumers)
+ */
+public class ProducerConsumerBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int items = 2_000_000, capacity = 1024, batch = 64, runs = 3;
+        String[] shapes = {"1x1", "2x2", "4x4"};
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "items" -> items = Integer.parseInt(pair[1]);
+                case "capacity" -> capacity = Integer.parseInt(pair[1]);
+                case "batch" -> batch = Integer.parseInt(pair[1]);
+                case "runs" -> runs = Integer.parseInt(pair[1]);
+                case "threads" -> shapes = pair[1].split(",");
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        int size = capacity;
+        String[] names = {"lock+conditions", "ring-spin", "ring-yield", "ring-park"};
+        List<Supplier<ProducerConsumerBuffer>> buffers = List.of(
+                () -> ConditionInterfaceDemo.newProducerConsumerExample(size, false),
+                () -> new MpmcRingBuffer(size, MpmcRingBuffer.WaitStrategy.SPIN),
+                () -> new MpmcRingBuffer(size, MpmcRingBuffer.WaitStrategy.YIELD),
+                () -> new MpmcRingBuffer(size, MpmcRingBuffer.WaitStrategy.PARK));
+
+        System.out.printf("%d items, capacity %d, best of %d runs%n%n", items, capacity, runs);
+        System.out.printf("%-18s %9s %15s %15s%n", "buffer", "threads", "items/s", "batch of " + batch);
+        for (String shape : shapes) {
+            int producers = Integer.parseInt(shape.split("x")[0]), consumers = Integer.parseInt(shape.split("x")[1]);
+            int total = items / (producers * consumers) * producers * consumers; //Divisible by both.
+            for (int b = 0; b < buffers.size(); b++) {
+                long single = Long.MAX_VALUE, batched = Long.MAX_VALUE;
+                for (int r = 0; r <= runs; r++) { //Run 0 is the warmup.
+                    long singleElapsed = run(buffers.get(b).get(), producers, consumers, total, 1);
+                    long batchedElapsed = run(buffers.get(b).get(), producers, consumers, total, batch);
+                    if (r > 0) {
+                        single = Math.min(single, singleElapsed);
+                        batched = Math.min(batched, batchedElapsed);
+                    }
+                }
+                System.out.printf("%-18s %9s %15.0f %15.0f%n", names[b], shape, total / (single / 1e9),
+                        total / (batched / 1e9));
+            }
+            System.out.println();
+        }
+    }
+
+    //Returns the elapsed nanoseconds.
+    static long run(ProducerConsumerBuffer buffer, int producers, int consumers, int total, int batch)
+            throws InterruptedException {
+        AtomicLong consumedSum = new AtomicLong();
+        Thread[] threads = new Thread[producers + consumers];
+        for (int p = 0; p < producers; p++) {
+            int first = p * (total / producers), last = first + total / producers;
+            threads[p] = new Thread(() -> {
+                int[] chunk = new int[batch];
+                try {
+                    for (int i = first; i < last; ) {
+                        if (batch == 1) {
+                            buffer.produce(i++);
+                            continue;
+                        }
+                        int n = Math.min(batch, last - i);
+                        for (int k = 0; k < n; k++) chunk[k] = i++;
+                        buffer.produceAll(chunk, 0, n);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            int count = total / consumers;
+            threads[producers + c] = new Thread(() -> {
+                long sum = 0;
+                int[] drained = new int[batch];
+                try {
+                    for (int left = count; left > 0; ) {
+                        if (batch == 1) {
+                            sum += buffer.consume();
+                            left--;
+                            continue;
+                        }
+                        int n = buffer.drainTo(drained, 0, Math.min(batch, left));
+                        for (int k = 0; k < n; k++) sum += drained[k];
+                        left -= n;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                consumedSum.addAndGet(sum);
+            });
+        }
+        long start = System.nanoTime();
+        Arrays.stream(threads).forEach(Thread::start);
+        for (Thread thread : threads) thread.join();
+        long elapsed = System.nanoTime() - start;
+        if (consumedSum.get() != (long) total * (total - 1) / 2) {
+            throw new IllegalStateException(buffer.getClass().getSimpleName() + " lost or duplicated items");
+        }
+        return elapsed;
+    }
+}
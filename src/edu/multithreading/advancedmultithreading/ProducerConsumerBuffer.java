@@ -0,0 +1,29 @@
+package edu.multithreading.advancedmultithreading;
+
+//The contract of a bounded producer/consumer buffer of ints: produce() waits while the buffer is full, consume() waits
+//while it is empty. ProducerConsumerExample (a lock and two conditions) and MpmcRingBuffer (lock-free) both implement
+//it, so they can be swapped and compared, see ProducerConsumerBenchmark.
+public interface ProducerConsumerBuffer {
+
+    void produce(int item) throws InterruptedException;
+
+    int consume() throws InterruptedException;
+
+    // Batch versions. produceAll() adds items[offset .. offset + length), waiting for room as needed. drainTo() waits
+    // until at least one item is there, then moves as many as are available (at most maxItems) into target from offset
+    // on, and returns how many it moved. The defaults just go one item at a time; implementations do better.
+    default void produceAll(int[] items, int offset, int length) throws InterruptedException {
+        for (int i = offset; i < offset + length; i++) {
+            produce(items[i]);
+        }
+    }
+
+    default int drainTo(int[] target, int offset, int maxItems) throws InterruptedException {
+        target[offset] = consume();
+        return 1;
+    }
+
+    default int drainTo(int[] target) throws InterruptedException {
+        return drainTo(target, 0, target.length);
+    }
+}
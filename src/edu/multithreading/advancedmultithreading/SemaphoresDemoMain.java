@@ -1,9 +1,12 @@
 package edu.multithreading.advancedmultithreading;
 
 import edu.multithreading.nthprime.PrimeNumberUtil;
+import edu.multithreading.nthprime.PrimeTable;
+import edu.multithreading.nthprime.SegmentedSieve;
+import edu.multithreading.sink.ResultSink;
 
 import java.util.Scanner;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.RejectedExecutionException;
 
 public class SemaphoresDemoMain {
     public static void main(String[] args) {
@@ -11,7 +14,11 @@ public class SemaphoresDemoMain {
         //the code while Semaphore can be used by multiple threads simultaneously, well not technically unlimited but
         //the number of threads that we define in it's constructor when creating the object of Semaphore.
         //Semaphore is kinda "permitted access"
-        Semaphore semaphore = new Semaphore(3, true);
+        //Semaphore semaphore = new Semaphore(3, true);
+        //3 permits was a guess. The AdaptiveConcurrencyLimiter has the same acquire()/release() calls, but starts at 3
+        //and raises or lowers the number of permits depending on how long the calculations take.
+        int cores = Runtime.getRuntime().availableProcessors();
+        AdaptiveConcurrencyLimiter semaphore = new AdaptiveConcurrencyLimiter(3, 1, 2 * cores);
         //public Semaphore(int permits, boolean fair) Another constructor for Semaphore:
         //1. Semaphore Overview:
         //
@@ -37,9 +44,21 @@ public class SemaphoresDemoMain {
         //	•	When you call new Semaphore(int permits, boolean fair), you are creating a new Semaphore object with a
         //  	specific number of permits and an optional fairness policy.
 
+        //Instead of a new Thread per request (most of which would just sit parked on the semaphore, holding their
+        //stacks), requests go through an AdmissionController: a bounded number of worker threads and a bounded queue.
+        //When both are full the request is rejected right away, so a burst can't pile up threads and memory.
+        //The semaphore stays the gate for how many calculations actually run at the same time.
+        AdmissionController admissionController = new AdmissionController(
+                2 * cores, 100, AdmissionController.OverloadPolicy.REJECT);
+
+        //The workers don't print themselves: System.out is synchronized, so they would serialize on it. They emit
+        //their lines to the sink, and its writer thread prints them in batches.
+        ResultSink results = ResultSink.console();
+
+        Scanner scanner = new Scanner(System.in);
         while(true){
                 System.out.println("I can tell you the nth prime number. Just Enter the value of n: ");
-                int n = new Scanner(System.in).nextInt();
+                int n = scanner.nextInt();
                 if (n == 0) break;
                 Runnable runnable = new Runnable() {
                     public void run() {
@@ -47,20 +66,31 @@ public class SemaphoresDemoMain {
                             semaphore.acquire(); //semaphore.acquireUninterruptibly();: It will only acquire if there are
                             // no interrupts, so it doesn't need a try-catch block.
                             //semaphore.acquire(2); We can acquire and release multiple permits
-                            System.out.println("Now calculating for n: "+n);
-                            int number = PrimeNumberUtil.calculatePrime(n);
-                            System.out.println("\nValue of " + n + "th prime: " + number);
                         }
                         catch (InterruptedException e) {
                             throw new RuntimeException(e);
                         }
+                        //The limiter learns from the time per unit of work, so it is told what the request cost (0
+                        //for an answer that is a lookup in the prime table).
+                        long cost = n > PrimeTable.shared().size() ? SegmentedSieve.estimatedCost(n) : 0;
+                        try {
+                            results.emit("Now calculating for n: "+n);
+                            int number = PrimeNumberUtil.calculatePrime(n);
+                            results.emit("\nValue of " + n + "th prime: " + number);
+                        }
                         finally {
-                            semaphore.release();
+                            semaphore.release(cost); //Only released if it was acquired, otherwise we'd hand out an extra permit.
                         }
                     }
                 };
-                Thread thread = new Thread(runnable);
-                thread.start();
+                try {
+                    admissionController.submit(runnable);
+                } catch (RejectedExecutionException e) {
+                    System.out.println("Too busy, request for n = " + n + " rejected (" + admissionController + ")");
+                }
         }
+        System.out.println("Waiting for the admitted requests to finish: " + admissionController);
+        admissionController.close();
+        System.out.println("Done: " + admissionController + ", " + semaphore);
     }
 }
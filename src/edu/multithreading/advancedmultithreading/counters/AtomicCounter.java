@@ -0,0 +1,20 @@
+package edu.multithreading.advancedmultithreading.counters;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//No lock, a single atomic add (a compareAndSet loop, or one LOCK XADD instruction on x86). Fast while one thread
+//counts, but every increment needs the cache line holding the value exclusively, so with many cores the line moves
+//from core to core on every increment and throughput stays flat, or drops, as cores are added.
+public class AtomicCounter implements ConcurrentCounter {
+    private final AtomicLong value = new AtomicLong();
+
+    @Override
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    @Override
+    public long sum() {
+        return value.get();
+    }
+}
@@ -0,0 +1,22 @@
+package edu.multithreading.advancedmultithreading.counters;
+
+//A counter that many threads add to at the same time, e.g. for request accounting. The Counter classes in
+//SynchronisationDemoMain and LockInterfaceDemo show why access has to be coordinated; the implementations here differ
+//in how much that coordination costs once many cores increment at once (see CounterBenchmark):
+//
+//	•	SynchronizedCounter and LockCounter: every increment takes the same lock, so the threads take turns.
+//	•	AtomicCounter: one atomic add on a single AtomicLong. No lock, but every core fights for the same cache line.
+//	•	StripedCounter: the count is spread over padded cells, mostly one per thread, like the JDK's LongAdder.
+//	•	PerThreadCounter: every thread has a cell of its own that only it writes; sum() merges them.
+public interface ConcurrentCounter {
+
+    void add(long delta);
+
+    default void increment() {
+        add(1);
+    }
+
+    // The current count. Exact once the threads adding to it are done; while they are running, a value the count had
+    // at some point during the call.
+    long sum();
+}
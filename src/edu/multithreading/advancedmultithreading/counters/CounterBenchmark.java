@@ -0,0 +1,91 @@
+package edu.multithreading.advancedmultithreading.counters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+/*
+How every ConcurrentCounter scales from 1 thread to one thread per core.
+
+The same total number of increments is split evenly over the threads, which start together and do nothing but
+increment. Printed per counter and thread count: increments per second, and the speedup over the same counter with
+the first thread count (1 by default). A counter that scales linearly shows a speedup equal to the number of threads.
+The lock-based ones and AtomicCounter usually get slower instead, since every increment makes one cache line (or the
+lock) move between cores.
+Every run checks that sum() equals the number of increments.
+
+With more threads than cores the threads take turns on the cores and the numbers say little about contention, so
+the default thread counts stop at the number of cores.
+
+Arguments (all optional): increments=20000000 threads=1,2,4,...,<cores> runs=3
+ */
+public class CounterBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long increments = 20_000_000;
+        int runs = 3;
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int t = 1; t < cores; t *= 2) threadCounts.add(t);
+        threadCounts.add(cores);
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "increments" -> increments = Long.parseLong(pair[1]);
+                case "runs" -> runs = Integer.parseInt(pair[1]);
+                case "threads" -> threadCounts = Arrays.stream(pair[1].split(",")).map(Integer::valueOf).toList();
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        String[] names = {"synchronized", "reentrant-lock", "atomic", "striped", "per-thread"};
+        List<Supplier<ConcurrentCounter>> counters = List.of(SynchronizedCounter::new, LockCounter::new,
+                AtomicCounter::new, StripedCounter::new, PerThreadCounter::new);
+
+        System.out.printf("%d increments, %d cores, best of %d runs%n%n", increments, cores, runs);
+        System.out.printf("%-16s %8s %18s %9s%n", "counter", "threads", "increments/s", "speedup");
+        for (int c = 0; c < counters.size(); c++) {
+            double single = 0;
+            for (int threads : threadCounts) {
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r <= runs; r++) { //Run 0 is the warmup.
+                    long elapsed = run(counters.get(c).get(), threads, increments / threads);
+                    if (r > 0) best = Math.min(best, elapsed);
+                }
+                double rate = increments / threads * threads / (best / 1e9);
+                if (single == 0) single = rate;
+                System.out.printf("%-16s %8d %18.0f %8.2fx%n", names[c], threads, rate, rate / single);
+            }
+            System.out.println();
+        }
+    }
+
+    //Returns the elapsed nanoseconds.
+    static long run(ConcurrentCounter counter, int threads, long perThread) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long i = 0; i < perThread; i++) {
+                    counter.increment();
+                }
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        long elapsed = System.nanoTime() - begin;
+        if (counter.sum() != perThread * threads) {
+            throw new IllegalStateException(counter.getClass().getSimpleName() + " counted " + counter.sum()
+                    + " instead of " + perThread * threads);
+        }
+        return elapsed;
+    }
+}
@@ -0,0 +1,30 @@
+package edu.multithreading.advancedmultithreading.counters;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+//The Counter of LockInterfaceDemo without the sleep: one ReentrantLock (non-fair) around every add.
+public class LockCounter implements ConcurrentCounter {
+    private final Lock lock = new ReentrantLock();
+    private long value;
+
+    @Override
+    public void add(long delta) {
+        lock.lock();
+        try {
+            value += delta;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long sum() {
+        lock.lock();
+        try {
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package edu.multithreading.advancedmultithreading.counters;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+Accumulate per thread, merge on read.
+
+	1.	The first add() of a thread gives it a cell of its own (padded to a cache line, see StripedCounter) and
+	    registers the cell, once, in a lock-free list.
+	2.	From then on only that thread writes its cell, so an add needs neither a lock nor a compareAndSet: it reads its
+	    own value and stores the new one with a release store, which makes it visible to readers without the cost of a
+	    full fence. Each core keeps its own cache line, so adds scale with the number of cores.
+	3.	sum() merges: it adds up every registered cell. Cells of threads that have ended stay registered, so their counts
+	    are never lost.
+
+The price: one cell per thread that ever counted, for as long as the counter lives. That suits a counter used by the
+threads of a pool; with a new thread per request (or virtual threads) the list keeps growing, and StripedCounter is
+the better choice.
+ */
+public class PerThreadCounter implements ConcurrentCounter {
+    private static final int VALUE = 8; //Value in the middle of 16 longs: a cache line on either side of it.
+
+    private final Queue<AtomicLongArray> cells = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<AtomicLongArray> ownCell = ThreadLocal.withInitial(() -> {
+        AtomicLongArray cell = new AtomicLongArray(2 * VALUE);
+        cells.add(cell);
+        return cell;
+    });
+
+    @Override
+    public void add(long delta) {
+        AtomicLongArray cell = ownCell.get();
+        cell.setRelease(VALUE, cell.getPlain(VALUE) + delta); //We are the only writer, no compareAndSet needed.
+    }
+
+    @Override
+    public long sum() {
+        long sum = 0;
+        for (AtomicLongArray cell : cells) {
+            sum += cell.getAcquire(VALUE);
+        }
+        return sum;
+    }
+}
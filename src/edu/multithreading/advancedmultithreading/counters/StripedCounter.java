@@ -0,0 +1,63 @@
+package edu.multithreading.advancedmultithreading.counters;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+The count spread over several cells, the idea behind java.util.concurrent.atomic.LongAdder:
+
+	1.	There are cells for about twice as many threads as cores (a power of two). A thread starts at the cell its
+	    thread id hashes to, so threads mostly land on different cells and their adds don't touch the same cache line.
+	2.	Each cell has a cache line of its own (8 longs, the value in the middle one), like the slots of MpmcRingBuffer.
+	    Without the padding, neighbouring cells would share a line and the cores would still fight over it (false
+	    sharing), even though they add to different cells.
+	3.	An add is one compareAndSet on the thread's cell. If it fails, another thread is using the same cell right now:
+	    the thread moves on to another cell for its next adds (and this add goes to that one unconditionally), so two
+	    busy threads don't keep colliding.
+	4.	sum() adds up all cells. It is a plain loop over reads, the price is paid by the rare reader, not by the writers.
+ */
+public class StripedCounter implements ConcurrentCounter {
+    private static final int STRIDE = 8; //Longs per cell: a 64 byte cache line.
+    private static final int VALUE = STRIDE / 2; //Where in its line a cell keeps its value.
+
+    private final AtomicLongArray cells;
+    private final int mask;
+    //The cell each thread uses, moved on after a collision. A hint only: a stale value is just a slower add.
+    private final ThreadLocal<int[]> probe =
+            ThreadLocal.withInitial(() -> new int[]{hash(Thread.currentThread().threadId())});
+
+    public StripedCounter() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedCounter(int minCells) {
+        int count = Integer.highestOneBit(Math.max(1, minCells - 1) << 1);
+        this.cells = new AtomicLongArray((count + 1) * STRIDE); //One extra line keeps the last cell apart.
+        this.mask = count - 1;
+    }
+
+    private static int hash(long threadId) {
+        long h = threadId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public void add(long delta) {
+        int[] cell = probe.get();
+        int index = (cell[0] & mask) * STRIDE + VALUE;
+        long value = cells.get(index);
+        if (!cells.weakCompareAndSetVolatile(index, value, value + delta)) {
+            //An odd step visits every cell before coming back, since the number of cells is a power of two.
+            cell[0] += 0x61C88647;
+            cells.getAndAdd((cell[0] & mask) * STRIDE + VALUE, delta);
+        }
+    }
+
+    @Override
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.get(i * STRIDE + VALUE);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,16 @@
+package edu.multithreading.advancedmultithreading.counters;
+
+//The Counter of SynchronisationDemoMain without the sleep: the monitor lock of this object around every add.
+public class SynchronizedCounter implements ConcurrentCounter {
+    private long value;
+
+    @Override
+    public synchronized void add(long delta) {
+        value += delta;
+    }
+
+    @Override
+    public synchronized long sum() {
+        return value;
+    }
+}
@@ -0,0 +1,8 @@
+package edu.multithreading.advancedmultithreading.executorservice;
+
+//A task that knows roughly how expensive it is, so a CostAwareExecutor can run cheap tasks first. The unit is up to
+//the caller, as long as tasks given to the same executor agree on it (for nth prime requests it is
+//SegmentedSieve.estimatedCost(n): about how many numbers have to be sieved).
+public interface CostAware {
+    long estimatedCost();
+}
@@ -0,0 +1,186 @@
+package edu.multithreading.advancedmultithreading.executorservice;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+A ThreadPoolExecutor that runs cheap tasks before expensive ones (shortest job first), without starving the expensive
+ones.
+
+A normal fixed pool hands out tasks strictly in arrival order (FIFO), so a single request for n = 10^7 that arrives
+just before a few hundred requests for n = 100 makes all of them wait for it. Here the work queue is a
+PriorityBlockingQueue, ordered by a virtual deadline:
+
+	deadline = time the task was submitted + estimated cost * nanosPerCostUnit
+
+	•	Shortest job first: tasks submitted at about the same time are ordered by cost, so the small ones go first.
+	•	Aging: the deadline of a waiting task never changes, while every new task gets a later submission time. A big
+	    task is overtaken only by tasks that arrive less than its own cost later. After that everything new queues
+	    behind it, so it can't be starved however many small tasks keep coming.
+	•	Tasks with the same deadline keep their submission order.
+
+How a task tells us its cost: anything implementing CostAware (wrap a plain task with withCost()). Tasks that don't
+have a cost count as 0, so among themselves they stay FIFO, as in a normal pool. With the default of 1 ns per unit and
+SegmentedSieve.estimatedCost(n) as the cost (about the number of values to sieve), the head start is roughly the time
+the task is expected to take.
+
+It is a plain ThreadPoolExecutor otherwise, so it can go wherever an ExecutorService or a ThreadPoolExecutor is used:
+execute(), submit(), invokeAll() and CompletableFuture.supplyAsync(..., executor) all go through the ordered queue. The
+queue is unbounded, so the pool always runs with its core size.
+ */
+public class CostAwareExecutor extends ThreadPoolExecutor {
+    private static final long MAX_HEAD_START = TimeUnit.HOURS.toNanos(1);
+
+    private final double nanosPerCostUnit;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public CostAwareExecutor(int threads) {
+        this(threads, 1.0);
+    }
+
+    public CostAwareExecutor(int threads, double nanosPerCostUnit) {
+        super(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(64, CostAwareExecutor::compare));
+        this.nanosPerCostUnit = nanosPerCostUnit;
+    }
+
+    public static Runnable withCost(long cost, Runnable task) {
+        return new CostedRunnable(cost, task);
+    }
+
+    public static <T> Callable<T> withCost(long cost, Callable<T> task) {
+        return new CostedCallable<>(cost, task);
+    }
+
+    //Everything reaches the queue through execute(). Tasks from submit() are already wrapped by newTaskFor(), anything
+    //else (a plain Runnable, or the task CompletableFuture hands us) is wrapped here. A task run through execute() is
+    //not turned into a Future, so an exception it throws still reaches the thread's uncaught exception handler.
+    @Override
+    public void execute(Runnable command) {
+        super.execute(command instanceof Prioritized ? command : new PrioritizedRunnable(command, deadline(command), sequence.getAndIncrement()));
+    }
+
+    //The queue holds the wrappers from execute(), so remove() and shutdownNow() translate between them and the tasks
+    //the caller actually passed in. (Tasks from submit() are queued as the Future submit() returned, as in any pool.)
+    @Override
+    public boolean remove(Runnable task) {
+        if (task instanceof Prioritized) {
+            return super.remove(task);
+        }
+        for (Runnable queued : getQueue()) {
+            if (queued instanceof PrioritizedRunnable wrapper && wrapper.task == task) {
+                return super.remove(queued);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = super.shutdownNow();
+        tasks.replaceAll(task -> task instanceof PrioritizedRunnable wrapper ? wrapper.task : task);
+        return tasks;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new PrioritizedTask<>(callable, deadline(callable), sequence.getAndIncrement());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new PrioritizedTask<>(runnable, value, deadline(runnable), sequence.getAndIncrement());
+    }
+
+    private long deadline(Object task) {
+        long cost = task instanceof CostAware costAware ? Math.max(0, costAware.estimatedCost()) : 0;
+        return System.nanoTime() + (long) Math.min(cost * nanosPerCostUnit, MAX_HEAD_START);
+    }
+
+    //Deadlines are nanoTime values, which may only be compared by their difference.
+    private static int compare(Runnable a, Runnable b) {
+        Prioritized x = (Prioritized) a, y = (Prioritized) b;
+        int byDeadline = Long.compare(x.deadline() - y.deadline(), 0);
+        return byDeadline != 0 ? byDeadline : Long.compare(x.sequence(), y.sequence());
+    }
+
+    private interface Prioritized {
+        long deadline();
+
+        long sequence();
+    }
+
+    private static final class PrioritizedRunnable implements Runnable, Prioritized {
+        private final Runnable task;
+        private final long deadline;
+        private final long sequence;
+
+        PrioritizedRunnable(Runnable task, long deadline, long sequence) {
+            this.task = task;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public long deadline() {
+            return deadline;
+        }
+
+        @Override
+        public long sequence() {
+            return sequence;
+        }
+    }
+
+    private static final class PrioritizedTask<T> extends FutureTask<T> implements Prioritized {
+        private final long deadline;
+        private final long sequence;
+
+        PrioritizedTask(Callable<T> callable, long deadline, long sequence) {
+            super(callable);
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        PrioritizedTask(Runnable runnable, T value, long deadline, long sequence) {
+            super(runnable, value);
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public long deadline() {
+            return deadline;
+        }
+
+        @Override
+        public long sequence() {
+            return sequence;
+        }
+    }
+
+    private record CostedRunnable(long estimatedCost, Runnable task) implements Runnable, CostAware {
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    private record CostedCallable<T>(long estimatedCost, Callable<T> task) implements Callable<T>, CostAware {
+        @Override
+        public T call() throws Exception {
+            return task.call();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package edu.multithreading.advancedmultithreading.executorservice;
+
+import edu.multithreading.metrics.MetricsRegistry;
+import edu.multithreading.metrics.StrategyMetrics;
+import edu.multithreading.nthprime.CancellationToken;
+import edu.multithreading.nthprime.PrimeNumberUtil;
+import edu.multithreading.nthprime.SegmentedSieve;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//The PrimeService backends are all the same thing: an executor that runs the computation, optionally gated by a
+//semaphore. Only the executor (and the number of permits) differs, see the factory methods on PrimeService.
+class ExecutorPrimeService implements PrimeService {
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+    private static final long PERMIT_POLL_MILLIS = 10;
+
+    private final String name;
+    private final ExecutorService executorService;
+    private final Semaphore permits; //null when the executor itself limits the concurrency.
+    private final StrategyMetrics metrics;
+    private volatile boolean closed;
+
+    ExecutorPrimeService(String name, ExecutorService executorService, int permits) {
+        this.name = name;
+        this.executorService = executorService;
+        this.permits = permits > 0 ? new Semaphore(permits, true) : null;
+        this.metrics = MetricsRegistry.shared().strategy(name);
+    }
+
+    @Override
+    public CompletableFuture<Long> submit(long n) {
+        return submit(n, CancellationToken.create());
+    }
+
+    @Override
+    public CompletableFuture<Long> submit(long n, long timeout, TimeUnit unit) {
+        return submit(n, CancellationToken.withTimeout(timeout, unit)).orTimeout(timeout, unit);
+    }
+
+    //CompletableFuture.cancel() can't interrupt the thread running the supplier, so the token is what actually stops
+    //the computation: it is cancelled as soon as the future completes any other way than with a result.
+    private CompletableFuture<Long> submit(long n, CancellationToken token) {
+        if (closed) {
+            throw new IllegalStateException(name + " prime service is closed");
+        }
+        //The task CompletableFuture hands to the executor carries the cost of n, which a CostAwareExecutor uses to
+        //order its queue (every other executor just runs it).
+        long cost = SegmentedSieve.estimatedCost(n);
+        long submittedAt = metrics.submitted();
+        AtomicLong startedAt = new AtomicLong(); //Set by the thread that starts on the request.
+        CompletableFuture<Long> future = CompletableFuture.supplyAsync(() -> compute(n, token, submittedAt, startedAt),
+                task -> executorService.execute(CostAwareExecutor.withCost(cost, task)));
+        //The outcome is recorded here and only here: with orTimeout the future can time out while compute() is
+        //returning its answer, and a request recorded in both places would count as completed and as failed.
+        future.whenComplete((prime, failure) -> {
+            if (failure == null) {
+                metrics.completed(submittedAt, startedAt.get());
+            } else {
+                metrics.failed();
+                token.cancel();
+            }
+        });
+        return future;
+    }
+
+    //Waiting for a permit counts as queue wait: the request can't make progress yet either way.
+    private long compute(long n, CancellationToken token, long submittedAt, AtomicLong startedAt) {
+        if (permits == null) {
+            return timedCompute(n, token, submittedAt, startedAt);
+        }
+        acquirePermit(token);
+        try {
+            return timedCompute(n, token, submittedAt, startedAt);
+        } finally {
+            permits.release();
+        }
+    }
+
+    //A request can queue for a permit for a long time, and a timed-out or cancelled one shouldn't hold its place (or
+    //then take a permit) regardless. So instead of acquireUninterruptibly(), try for a short while and check the token
+    //(deadline, cancel(), interrupt) between attempts, the same way PrimeTable waits for its growLock.
+    private void acquirePermit(CancellationToken token) {
+        while (true) {
+            token.throwIfCancelled();
+            try {
+                if (permits.tryAcquire(PERMIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); //The token sees the interrupt on the next round and throws.
+            }
+        }
+    }
+
+    private long timedCompute(long n, CancellationToken token, long submittedAt, AtomicLong startedAt) {
+        startedAt.set(metrics.started(submittedAt));
+        return PrimeNumberUtil.calculatePrime(n, token);
+    }
+
+    //Graceful drain: shutdown() lets everything already submitted finish. Only if that takes longer than the timeout
+    //are the remaining tasks interrupted with shutdownNow().
+    @Override
+    public void close() {
+        closed = true;
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
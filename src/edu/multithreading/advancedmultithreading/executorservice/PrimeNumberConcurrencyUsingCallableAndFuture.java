@@ -1,10 +1,9 @@
 package edu.multithreading.advancedmultithreading.executorservice;
 
+import edu.multithreading.nthprime.CancellationToken;
 import edu.multithreading.nthprime.PrimeNumberUtil;
+import edu.multithreading.nthprime.PrimeResult;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.*;
 
@@ -13,49 +12,89 @@ import java.util.concurrent.*;
 //But in case of concurrency, the application will end when the last thread that has been spawned ends that means,
 //the main's going to wait until the last thread finishes, then the main's going to stop its execution.
 public class PrimeNumberConcurrencyUsingCallableAndFuture {
-    public static void main(String[] args) {
-        List<Future<Integer>> futures = new ArrayList<>(); // Creating array-list of Future objects to hold the value
-        //of the prime numbers returned from the Callable.
+    private static final long REQUEST_TIMEOUT_SECONDS = 30;
 
+    /*
+    How the results get back to us:
+
+    We used to keep every Future in a List and, each time the user typed a number, walk the whole list asking isDone().
+    That had three problems: a result only showed up when the user typed something, every input cost a scan over all
+    pending requests, and removing from the list while iterating over it threw a ConcurrentModificationException.
+
+    An ExecutorCompletionService fixes all three. It wraps the executor, and every task it runs puts its own Future into
+    a queue the moment it finishes. So:
+
+	    •	take() hands out finished results in the order they finished, blocking while nothing is done.
+	    •	Nobody looks at the pending requests at all. Each one costs a queue slot in the executor and nothing else, so
+	        hundreds of thousands of outstanding requests are fine.
+	    •	A separate resultPrinter thread sits on take() and prints each answer as soon as it is ready, while main keeps
+	        reading input.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        //A fixed pool, not a cached one: with many outstanding requests a cached pool would start a thread for each of
+        //them. Here the extra requests just wait in the pool's queue.
+        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        CompletionService<PrimeResult> completionService = new ExecutorCompletionService<>(executorService);
+
+        Thread resultPrinter = new Thread(() -> {
+            try {
+                while (true) {
+                    print(completionService.take());
+                }
+            } catch (InterruptedException e) {
+                //main interrupts us only once every task has finished, so whatever is left is already in the queue.
+                for (Future<PrimeResult> future = completionService.poll(); future != null;
+                     future = completionService.poll()) {
+                    print(future);
+                }
+            }
+        }, "result-printer");
+        resultPrinter.start();
+
+        Scanner scanner = new Scanner(System.in);
         while(true){
             System.out.println("I can tell you the nth prime number. Just Enter the value of n: ");
-            int n = new Scanner(System.in).nextInt();
-            if (n==0) break;
-            Callable<Integer> callable = new Callable<Integer>() {
+            int n = scanner.nextInt();
+            if (n==0) {
+                executorService.shutdown(); //No new tasks, but the submitted ones are allowed to finish.
+                break;
+            }
+            CancellationToken token = CancellationToken.withTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Callable<PrimeResult> callable = new Callable<PrimeResult>() {
                 @Override
-                public Integer call() throws Exception {
-                    return PrimeNumberUtil.calculatePrime(n);
-                }
-            };
-            ExecutorService executorService = Executors.newCachedThreadPool();
-            Future<Integer> primeNumberFuture = executorService.submit(callable);
-            futures.add(primeNumberFuture); //adding the returned primeNumbers from the Callable to ArrayList of futures.
-//            try{
-//                System.out.println(n + "th prime number is "+primeNumberFuture.get()); //This line will technically
-//                // block the execution of the thread if we put in a large number to calculate prime as, every prime
-//                // number is being returned to the Future<Integer> primeNumberFuture object, and the callable couldn't
-//                // finish the calculation and return the result of the prime number to the future object, the get() won't
-//                // work as until the Future object is populated. So, if a large value of n is given, it's technically
-//                // going to block the flow until the calculation gets complete.
-//            }
-//            catch (InterruptedException | ExecutionException e){ //syntax for multi catch block introduced in Java 7
-//                System.out.println(e.getMessage());
-//            }
-//            finally {
-//                executorService.shutdown();
-//            }
-            Iterator<Future<Integer>> iterator = futures.iterator();
-            while(iterator.hasNext()) {
-                Future<Integer> future = iterator.next();
-                if (future.isDone()) {
+                public PrimeResult call() throws Exception {
+                    //calculatePrime() checks the token between sieve segments: past the deadline (or once this thread
+                    //is interrupted) it throws a CancellationException and the thread is free for the next request.
+                    //The completion service queues that failed Future like any other, and print() reports it.
                     try {
-                        System.out.println(n + "th prime number is " + future.get());
-                        futures.remove(future);
-                    } catch (InterruptedException | ExecutionException e) {
-                        System.out.println(e.getMessage());
+                        return new PrimeResult(n, PrimeNumberUtil.calculatePrime(n, token));
+                    } catch (CancellationException e) {
+                        throw new CancellationException("Gave up on n = " + n + ": " + e.getMessage());
                     }
                 }
-            }
+            };
+            //The Future submit() returns isn't kept: when the task finishes, the completion service queues that same
+            //Future for resultPrinter's take(). main never calls get(), so a large n can't block it from reading the
+            //next one.
+            completionService.submit(callable);
+        }
+        System.out.println("Waiting for the pending requests to finish.");
+        executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        resultPrinter.interrupt();
+        resultPrinter.join();
+    }
+
+    //The future is done, so get() doesn't block.
+    private static void print(Future<PrimeResult> future) {
+        try {
+            PrimeResult result = future.get();
+            System.out.println(result.n() + "th prime number is " + result.prime());
+        } catch (ExecutionException e) {
+            System.out.println(e.getCause().getMessage());
+        } catch (CancellationException e) {
+            System.out.println("Request cancelled: " + e.getMessage()); //A cancelled task must not end the printer.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
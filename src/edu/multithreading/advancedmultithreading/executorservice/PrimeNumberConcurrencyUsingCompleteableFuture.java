@@ -1,5 +1,7 @@
 package edu.multithreading.advancedmultithreading.executorservice;
 
+import edu.multithreading.sink.ResultSink;
+
 import java.util.Scanner;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -8,6 +10,9 @@ import java.util.concurrent.Executors;
 
 public class PrimeNumberConcurrencyUsingCompleteableFuture {
     public static void main(String[] args) {
+        //thenAccept() runs on the worker that computed the prime. Instead of println (every worker on System.out's
+        //lock) it hands the line to the sink, whose writer thread prints the lines in batches.
+        ResultSink results = ResultSink.console();
 
         while(true){
             System.out.println("Running by "+Thread.currentThread().getName() +": I can tell you the nth prime number. Just Enter the value of n: ");
@@ -36,7 +41,7 @@ public class PrimeNumberConcurrencyUsingCompleteableFuture {
             //CompletableFuture.supplyAsync(()->"hello").thenAccept(s -> System.out.println(s));
 
             CompletableFuture.supplyAsync(() -> PrimeNumberUtil.calculatePrime(n))
-                    .thenAccept(getPrime -> System.out.println(n +"th prime number is: " + getPrime+ " and printed by "+Thread.currentThread().getName()));
+                    .thenAccept(getPrime -> results.emit(n +"th prime number is: " + getPrime+ " and printed by "+Thread.currentThread().getName()));
 
 
 
@@ -47,15 +52,19 @@ public class PrimeNumberConcurrencyUsingCompleteableFuture {
 class PrimeNumberConcurrencyUsingCompleteableFutureAndThreadPool {
     public static void main(String[] args) {
         ExecutorService executorService = Executors.newFixedThreadPool(5);
+        ResultSink results = ResultSink.console();
         while(true){
             System.out.println("Running by "+Thread.currentThread().getName() +": I can tell you the nth prime number. Just Enter the value of n: ");
             int n = new Scanner(System.in).nextInt();
-            if (n==0) break;
+            if (n==0) {
+                executorService.shutdown(); //Lets the pending calculations finish, then the pool's threads end.
+                break;
+            }
 
             //Suppose I want CompleteableFuture to leverage my threadpool, I need to pass executorService, as second param to
             //the suuplyAsync() method, that way I can control in which thread the supplier lambda runs.
             CompletableFuture.supplyAsync(() -> PrimeNumberUtil.calculatePrime(n), executorService)
-                    .thenAccept(getPrime -> System.out.println(n +"th prime number is: " + getPrime+ " and printed by "+Thread.currentThread().getName()));
+                    .thenAccept(getPrime -> results.emit(n +"th prime number is: " + getPrime+ " and printed by "+Thread.currentThread().getName()));
 
             //if we don't define the pool where my lambda's gonna run, then by default it will run inside a common threadpool
             //named as the ForkJoinPool.commonPool-worker-(workerNo).
@@ -1,7 +1,17 @@
 package edu.multithreading.advancedmultithreading.executorservice;
 
+import edu.multithreading.advancedmultithreading.AdaptiveConcurrencyLimiter;
+import edu.multithreading.metrics.MetricsRegistry;
+import edu.multithreading.metrics.MetricsReporter;
+import edu.multithreading.metrics.StrategyMetrics;
+import edu.multithreading.nthprime.CancellationToken;
+import edu.multithreading.nthprime.PrimeTable;
+import edu.multithreading.nthprime.SegmentedSieve;
+import edu.multithreading.sink.ResultSink;
+
 import java.util.Scanner;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*
 ExecutorService is an interface. Executors is a class that provides concrete implementations of the interface.
@@ -41,6 +51,8 @@ Key Concepts and Features:
 
  */
 public class PrimeNumberConcurrencyUsingThreadPoolAndExecutorService {
+    private static final long REQUEST_TIMEOUT_SECONDS = 30;
+
     public static void main(String[] args) {
 
         ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(1);//This pool size of 1
@@ -57,12 +69,35 @@ public class PrimeNumberConcurrencyUsingThreadPoolAndExecutorService {
         // & getCompletedTaskCount() method on the reference,
         // and these methods can be found in ThreadPoolExecutor class. So we're taking the reference of the
         // ThreadPoolExecutor type and calling the newFixedThreadPool and casting it to ThreadPoolExecutor.
-        ThreadPoolExecutor executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(3);
+        //ThreadPoolExecutor executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(3);
+        //A fixed pool runs requests in arrival order, so one huge n makes every small request behind it wait. The
+        //CostAwareExecutor is the same kind of pool, but its queue puts cheap requests first (see the class comment
+        //for how it keeps the expensive ones from waiting forever).
+        ThreadPoolExecutor executorService = new CostAwareExecutor(3);
+
+        //The 3 above is only where we start. Every finished task reports how long it took to the limiter, and the
+        //reporter below resizes the pool to the limiter's current limit: more threads while latency stays flat, fewer
+        //once the calculations start slowing each other down.
+        AdaptiveConcurrencyLimiter poolSizer = new AdaptiveConcurrencyLimiter(3, 1,
+                2 * Runtime.getRuntime().availableProcessors());
+        //How many tasks are running, for the limiter. executorService.getActiveCount() would tell us too, but it takes
+        //the pool's main lock, on every completion.
+        AtomicInteger running = new AtomicInteger();
+
+        //Every request reports its queue wait, compute time and end-to-end time here. getCompletedTaskCount() only
+        //told us how many tasks had finished, not how long anybody waited for them.
+        StrategyMetrics metrics = MetricsRegistry.shared().strategy("cost-aware-pool");
+        MetricsReporter metricsReporter = new MetricsReporter(MetricsRegistry.shared(), System.out);
+
+        //Workers used to println their results themselves, and all of them queued up on System.out's lock. Now they
+        //hand the lines to the sink, whose one writer thread prints them in batches (see AsyncBatchingSink).
+        ResultSink results = ResultSink.console();
 
         Runnable reporterRunnable = () -> {
             System.out.println("Running Report");
-            System.out.println("Active threads : " + executorService.getActiveCount());
-            System.out.println("Completed threads : " + executorService.getCompletedTaskCount());
+            poolSizer.resize(executorService);
+            System.out.println("Pool size : " + executorService.getCorePoolSize() + " (" + poolSizer + ")");
+            metricsReporter.run();
         };
 
         scheduledExecutorService.scheduleAtFixedRate(reporterRunnable,1,5, TimeUnit.SECONDS);
@@ -72,15 +107,30 @@ public class PrimeNumberConcurrencyUsingThreadPoolAndExecutorService {
             System.out.println("I can tell you the nth prime number. Just Enter the value of n: ");
             int n = new Scanner(System.in).nextInt();
             if (n==0) break;
+            CancellationToken token = CancellationToken.withTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            long submittedAt = metrics.submitted();
             Runnable runnable = new Runnable() {
                 public void run() {
-                    int number = PrimeNumberUtil.calculatePrime(n);
-                    System.out.println("Result: ");
-                    System.out.println("\nValue of "+n+"th prime: "+number);
+                    //The deadline starts at submission, so time spent waiting in the pool's queue counts as well.
+                    //Once it passes, the calculation stops at its next segment and the pool thread is free again.
+                    long startedAt = metrics.started(submittedAt);
+                    int inFlight = running.incrementAndGet();
+                    //An answer already in the table is a lookup, it tells the limiter nothing about the computation.
+                    long cost = n > PrimeTable.shared().size() ? SegmentedSieve.estimatedCost(n) : 0;
+                    try {
+                        int number = PrimeNumberUtil.calculatePrime(n, token);
+                        poolSizer.record(metrics.completed(submittedAt, startedAt), cost, inFlight);
+                        results.emit("Result: \nValue of "+n+"th prime: "+number);
+                    } catch (CancellationException e) {
+                        metrics.failed();
+                        results.emit("\nGave up on n = "+n+": "+e.getMessage());
+                    } finally {
+                        running.decrementAndGet();
+                    }
                 }
             };
             //new Thread(runnable).start();
-            executorService.execute(runnable);
+            executorService.execute(CostAwareExecutor.withCost(SegmentedSieve.estimatedCost(n), runnable));
 
         }
     }
@@ -1,19 +1,24 @@
 package edu.multithreading.advancedmultithreading.executorservice;
 
+import edu.multithreading.nthprime.CancellationToken;
+import edu.multithreading.nthprime.PrimeTable;
+
 public class PrimeNumberUtil {
+    //Same entry point as before, but backed by the segmented sieve instead of trial division. Shares the process-wide
+    //PrimeTable with edu.multithreading.nthprime.PrimeNumberUtil, so both see each other's answers.
     public static int calculatePrime(int n){
-        int number, numberOfPrimesFound, i;
-        number = 1; numberOfPrimesFound = 0;
+        return PrimeTable.shared().nthPrime(n);
+    }
 
-        while(numberOfPrimesFound<n){
-            number++;
-            for (i = 2; i<= number && number%i !=0; i++){
+    //Gives up with a CancellationException once the token is cancelled, its deadline passes or the thread is
+    //interrupted, so Future.cancel(true) and shutdownNow() free the thread right away.
+    public static int calculatePrime(int n, CancellationToken token){
+        return PrimeTable.shared().nthPrime(n, token);
+    }
 
-            }
-            if (i == number){
-                numberOfPrimesFound++;
-            }
-        }
-        return number;
+    //Batch version: answers all of ns (in their original order) for roughly the cost of the largest one, instead of
+    //one computation per element.
+    public static int[] calculatePrimes(int[] ns){
+        return PrimeTable.shared().nthPrimes(ns);
     }
 }
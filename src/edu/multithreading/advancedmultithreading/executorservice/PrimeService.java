@@ -0,0 +1,74 @@
+package edu.multithreading.advancedmultithreading.executorservice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/*
+One asynchronous API for nth prime requests, whatever runs them underneath.
+
+Every front-end in this package used to have its own Scanner loop wired straight to one way of running threads, so the
+logic could not be reused anywhere else. A PrimeService just takes n and hands back a CompletableFuture, and the backend
+is chosen when the service is created:
+
+	•	platformPool(threads): a fixed pool of platform threads, shared by all requests.
+	•	shortestJobFirst(threads): a fixed pool that runs cheap requests (small n) before expensive ones, with aging so
+	    the expensive ones still get their turn (see CostAwareExecutor).
+	•	forkJoin(parallelism): a dedicated work-stealing ForkJoinPool.
+	•	virtualThreads(): one virtual thread per request (Java 21), cheap enough to not need a pool at all.
+	•	semaphoreLimited(permits): one virtual thread per request, but only permits of them compute at the same time,
+	    like SemaphoresDemoMain without a platform thread parked for every waiting request.
+
+A service owns its executor. close() stops accepting requests and waits for the ones already submitted to finish (a
+graceful drain), so it is meant to be used with try-with-resources.
+ */
+public interface PrimeService extends AutoCloseable {
+
+    CompletableFuture<Long> submit(long n);
+
+    // Same, with a deadline: once it passes the future fails with a TimeoutException and the computation stops at its
+    // next segment boundary. Cancelling the returned future also stops the computation.
+    CompletableFuture<Long> submit(long n, long timeout, TimeUnit unit);
+
+    // Batch submission: the answers come back together, in the order of ns.
+    default CompletableFuture<long[]> submitAll(long... ns) {
+        List<CompletableFuture<Long>> futures = new ArrayList<>(ns.length);
+        for (long n : ns) {
+            futures.add(submit(n));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            long[] primes = new long[futures.size()];
+            for (int i = 0; i < primes.length; i++) {
+                primes[i] = futures.get(i).join();
+            }
+            return primes;
+        });
+    }
+
+    // Stops accepting requests and waits for the submitted ones to finish.
+    @Override
+    void close();
+
+    static PrimeService platformPool(int threads) {
+        return new ExecutorPrimeService("platform-pool", Executors.newFixedThreadPool(threads), 0);
+    }
+
+    static PrimeService shortestJobFirst(int threads) {
+        return new ExecutorPrimeService("shortest-job-first", new CostAwareExecutor(threads), 0);
+    }
+
+    static PrimeService forkJoin(int parallelism) {
+        return new ExecutorPrimeService("fork-join", new ForkJoinPool(parallelism), 0);
+    }
+
+    static PrimeService virtualThreads() {
+        return new ExecutorPrimeService("virtual-threads", Executors.newVirtualThreadPerTaskExecutor(), 0);
+    }
+
+    static PrimeService semaphoreLimited(int permits) {
+        return new ExecutorPrimeService("semaphore-limited", Executors.newVirtualThreadPerTaskExecutor(), permits);
+    }
+}
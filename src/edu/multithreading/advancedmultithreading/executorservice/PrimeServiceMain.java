@@ -0,0 +1,49 @@
+package edu.multithreading.advancedmultithreading.executorservice;
+
+import edu.multithreading.metrics.MetricsRegistry;
+import edu.multithreading.metrics.MetricsReporter;
+import edu.multithreading.sink.AsyncBatchingSink;
+import edu.multithreading.sink.ResultSink;
+
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+//The same Scanner loop as the other front-ends, but written once against PrimeService. The backend is picked by the
+//first argument: platform (default), sjf, forkjoin, virtual or semaphore.
+public class PrimeServiceMain {
+    private static final long REQUEST_TIMEOUT_SECONDS = 30;
+
+    public static void main(String[] args) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        String backend = args.length > 0 ? args[0] : "platform";
+        PrimeService primeService = switch (backend) {
+            case "platform" -> PrimeService.platformPool(cores);
+            case "sjf" -> PrimeService.shortestJobFirst(cores);
+            case "forkjoin" -> PrimeService.forkJoin(cores);
+            case "virtual" -> PrimeService.virtualThreads();
+            case "semaphore" -> PrimeService.semaphoreLimited(3);
+            default -> throw new IllegalArgumentException("Unknown backend: " + backend);
+        };
+
+        //Created now, so the final report covers the whole session.
+        MetricsReporter metricsReporter = new MetricsReporter(MetricsRegistry.shared(), System.out);
+
+        //try-with-resources: when the user enters 0 the service is closed, which waits for the pending requests, and
+        //then the sink, which prints whatever answers it still holds. Until then the answers are printed in batches by
+        //the sink's writer thread, so the workers never wait for System.out.
+        try (ResultSink results = new AsyncBatchingSink(System.out); primeService) {
+            Scanner scanner = new Scanner(System.in);
+            while (true) {
+                System.out.println("I can tell you the nth prime number. Just Enter the value of n: ");
+                long n = scanner.nextLong();
+                if (n == 0) break;
+                primeService.submit(n, REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                        .whenComplete((prime, failure) -> results.emit(failure == null
+                                ? "\nValue of " + n + "th prime: " + prime
+                                : "\nGave up on n = " + n + ": " + failure));
+            }
+            System.out.println("Waiting for the pending requests to finish.");
+        }
+        metricsReporter.run();
+    }
+}
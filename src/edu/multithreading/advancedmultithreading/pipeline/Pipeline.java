@@ -0,0 +1,138 @@
+package edu.multithreading.advancedmultithreading.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/*
+A staged pipeline: the producer/consumer pattern of ConditionInterfaceDemo, chained.
+
+	submit() -> [queue] parse workers -> [queue] compute workers -> [queue] format workers -> [queue] write worker
+
+	1.	Every stage has its own bounded queue (its input), its own number of worker threads and its own batch size.
+	    A CPU-bound stage gets a thread per core while the I/O stages around it get one each, and each can be tuned
+	    without touching the others.
+	2.	Workers take their input in batches: they wait for one item, then drainTo() whatever else is there, up to the
+	    batch size. One queue operation then moves many items, and a stage function can work on a whole batch at once
+	    (e.g. one write() for many lines).
+	3.	Backpressure: a worker puts its output into the next stage's queue with a blocking put(). When a stage falls
+	    behind, its queue fills up, the stage before it blocks, its own queue fills up, and so on until submit()
+	    blocks. Memory stays bounded by the sum of the queue capacities, however much input there is.
+	4.	Shutting down with poison pills: finish() puts one pill per worker into the first queue. A worker that takes a
+	    pill stops, and the last worker of a stage to stop puts pills into the next stage's queue. Every item submitted
+	    before finish() has passed through every stage by the time awaitCompletion() returns.
+	5.	Metrics per stage: items in and out, throughput, utilization (the time the workers spent in the stage function
+	    out of the time they existed), how full the queue is right now, and how long the stage was blocked on the next
+	    one. The stage with full utilization and a full queue in front of it is the bottleneck, the one after it shows
+	    an empty queue.
+
+A batch whose stage function throws is dropped and counted. The first such failure is rethrown by awaitCompletion(),
+after everything else went through.
+
+	Pipeline<String> pipeline = Pipeline.<String>builder()
+	        .map("parse", 1, 1024, 4096, Long::parseLong)
+	        .map("compute", cores, 64, 4096, n -> PrimeNumberUtil.calculatePrime(n))
+	        .stage("write", 1, 1024, 4096, (primes, none) -> ...)
+	        .build();
+
+See PrimeFileJobRunner for a complete one.
+ */
+public final class Pipeline<I> {
+    private final List<Stage> stages;
+    private final LongAdder submitted = new LongAdder();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicReference<Exception> firstFailure = new AtomicReference<>();
+    private final long startedAt = System.nanoTime();
+    private volatile long finishedAt;
+
+    private Pipeline(List<Stage> stages) {
+        this.stages = stages;
+        for (int i = 0; i < stages.size(); i++) {
+            stages.get(i).start(i + 1 < stages.size() ? stages.get(i + 1) : null, this);
+        }
+    }
+
+    public static <I> Builder<I, I> builder() {
+        return new Builder<>(new ArrayList<>());
+    }
+
+    // I is what goes into the pipeline, O what the last stage added so far produces.
+    public static final class Builder<I, O> {
+        private final List<Stage> stages;
+
+        private Builder(List<Stage> stages) {
+            this.stages = stages;
+        }
+
+        public <N> Builder<I, N> stage(String name, int workers, int batchSize, int queueCapacity,
+                                       StageFunction<O, N> function) {
+            stages.add(new Stage(name, workers, batchSize, queueCapacity, function));
+            return new Builder<>(stages);
+        }
+
+        // A stage that turns every item into exactly one output.
+        public <N> Builder<I, N> map(String name, int workers, int batchSize, int queueCapacity,
+                                     Function<O, N> function) {
+            return stage(name, workers, batchSize, queueCapacity, (batch, output) -> {
+                for (O item : batch) output.add(function.apply(item));
+            });
+        }
+
+        // Starts the worker threads of every stage.
+        public Pipeline<I> build() {
+            if (stages.isEmpty()) throw new IllegalStateException("A pipeline needs at least one stage");
+            return new Pipeline<>(List.copyOf(stages));
+        }
+    }
+
+    // Blocks while the first stage's queue is full.
+    public void submit(I item) throws InterruptedException {
+        submitted.increment();
+        stages.get(0).queue.put(item);
+    }
+
+    // Nothing more will be submitted.
+    public void finish() {
+        stages.get(0).finish();
+    }
+
+    public void awaitCompletion() throws InterruptedException, ExecutionException {
+        done.await();
+        Exception failure = firstFailure.get();
+        if (failure != null) {
+            throw new ExecutionException("Pipeline stage failed", failure);
+        }
+    }
+
+    void finished() {
+        finishedAt = System.nanoTime();
+        done.countDown();
+    }
+
+    void failed(String stage, Exception e) {
+        if (firstFailure.compareAndSet(null, e)) {
+            System.err.println("Stage " + stage + " failed: " + e);
+        }
+    }
+
+    public String report() {
+        long end = finishedAt != 0 ? finishedAt : System.nanoTime();
+        double seconds = Math.max(1e-9, (end - startedAt) / 1e9);
+        StringBuilder report = new StringBuilder(String.format("%d submitted in %.2f s%n", submitted.sum(), seconds));
+        report.append(String.format("  %-10s %7s %12s %12s %12s %11s %10s %10s %8s%n", "stage", "workers", "in", "out",
+                "in/s", "utilization", "queue", "blocked s", "failed"));
+        for (Stage stage : stages) {
+            int queued = stage.queue.size();
+            int capacity = queued + stage.queue.remainingCapacity();
+            report.append(String.format("  %-10s %7d %12d %12d %12.0f %10.0f%% %4d/%-5d %10.2f %8d%n",
+                    stage.name, stage.workers, stage.itemsIn.sum(), stage.itemsOut.sum(), stage.itemsIn.sum() / seconds,
+                    100.0 * stage.busyNanos.sum() / (stage.workers * seconds * 1e9), queued, capacity,
+                    stage.blockedNanos.sum() / 1e9, stage.failedBatches.sum()));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,135 @@
+package edu.multithreading.advancedmultithreading.pipeline;
+
+import edu.multithreading.nthprime.PrimeNumberUtil;
+import edu.multithreading.nthprime.PrimeResult;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Answers a whole file of queries offline: one n per line in, one "n<TAB>prime" line per answer out.
+
+	main (reads lines) -> parse -> compute -> format -> write
+
+	•	parse (1 worker): the text to longs. Lines that aren't a number are skipped and counted, a bad line in the
+	    middle of a big file shouldn't throw away the rest.
+	•	compute (one worker per core by default): PrimeNumberUtil.calculatePrime. Almost all the CPU goes here, so it
+	    gets the threads, and small batches so the work spreads evenly over them. An n it can't answer (n < 1,
+	    n > PrimeNumberUtil.MAX_N, or a computation that fails) gets prime -1 instead of throwing, which would throw
+	    away the rest of its batch and end the job.
+	•	format (1 worker): PrimeResult to text, "n<TAB>error" for a -1 (the same marker MappedBatchRunner uses).
+	•	write (1 worker): a whole batch of lines goes into the BufferedWriter at once. One thread writes, so the output
+	    needs no lock.
+
+The compute workers finish in any order, so the output lines are in completion order, not in input order; every line
+carries its n. Reading stops whenever the parse queue is full, so the memory used doesn't depend on the size of the
+file. The stage report is printed every reportSeconds and once at the end.
+
+Arguments: input=<file> output=<file> computeWorkers=<cores> parseBatch=1024 computeBatch=16 writeBatch=1024
+queueCapacity=4096 reportSeconds=5. generate=<count> first writes count random queries in [1, maxN] (maxN=1000000) to
+the input file.
+ */
+public class PrimeFileJobRunner {
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        Path input = Path.of("primes-in.txt"), output = Path.of("primes-out.txt");
+        int computeWorkers = Runtime.getRuntime().availableProcessors();
+        int parseBatch = 1024, computeBatch = 16, writeBatch = 1024, queueCapacity = 4096;
+        long generate = 0, maxN = 1_000_000, reportSeconds = 5;
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "input" -> input = Path.of(pair[1]);
+                case "output" -> output = Path.of(pair[1]);
+                case "computeWorkers" -> computeWorkers = Integer.parseInt(pair[1]);
+                case "parseBatch" -> parseBatch = Integer.parseInt(pair[1]);
+                case "computeBatch" -> computeBatch = Integer.parseInt(pair[1]);
+                case "writeBatch" -> writeBatch = Integer.parseInt(pair[1]);
+                case "queueCapacity" -> queueCapacity = Integer.parseInt(pair[1]);
+                case "reportSeconds" -> reportSeconds = Long.parseLong(pair[1]);
+                case "generate" -> generate = Long.parseLong(pair[1]);
+                case "maxN" -> maxN = Long.parseLong(pair[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        if (generate > 0) {
+            generateInput(input, generate, maxN);
+        }
+
+        LongAdder skippedLines = new LongAdder(), failedValues = new LongAdder();
+        try (BufferedReader reader = Files.newBufferedReader(input);
+             BufferedWriter writer = Files.newBufferedWriter(output)) {
+            Pipeline<String> pipeline = Pipeline.<String>builder()
+                    .<Long>stage("parse", 1, parseBatch, queueCapacity, (lines, ns) -> {
+                        for (String line : lines) {
+                            try {
+                                ns.add(Long.parseLong(line.strip()));
+                            } catch (NumberFormatException e) {
+                                skippedLines.increment();
+                            }
+                        }
+                    })
+                    .map("compute", computeWorkers, computeBatch, queueCapacity,
+                            n -> new PrimeResult(n, prime(n, failedValues)))
+                    .map("format", 1, writeBatch, queueCapacity, result -> result.n() + "\t"
+                            + (result.prime() < 0 ? "error" : Long.toString(result.prime())) + "\n")
+                    .<Void>stage("write", 1, writeBatch, queueCapacity, (lines, none) -> {
+                        for (String line : lines) writer.write(line);
+                    })
+                    .build();
+
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+            reporter.scheduleAtFixedRate(() -> System.out.print(pipeline.report()),
+                    reportSeconds, reportSeconds, TimeUnit.SECONDS);
+            try {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    pipeline.submit(line); //Blocks while the pipeline is full.
+                }
+                pipeline.finish();
+                pipeline.awaitCompletion();
+            } finally {
+                reporter.shutdownNow();
+                System.out.print(pipeline.report());
+            }
+        }
+        if (skippedLines.sum() > 0) {
+            System.out.println("Skipped " + skippedLines.sum() + " lines that weren't a number.");
+        }
+        if (failedValues.sum() > 0) {
+            System.out.println(failedValues.sum() + " values out of range or failed, marked as errors.");
+        }
+        System.out.println("Answers written to " + output);
+    }
+
+    //-1 for a value we can't answer, so one bad n doesn't take its batch (and the job) down with it.
+    private static long prime(long n, LongAdder failedValues) {
+        if (n >= 1 && n <= PrimeNumberUtil.MAX_N) {
+            try {
+                return PrimeNumberUtil.calculatePrime(n);
+            } catch (RuntimeException e) {
+                //Counted below, like an n out of range.
+            }
+        }
+        failedValues.increment();
+        return -1;
+    }
+
+    private static void generateInput(Path input, long count, long maxN) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(input)) {
+            for (long i = 0; i < count; i++) {
+                writer.write(Long.toString(random.nextLong(1, maxN + 1)));
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package edu.multithreading.advancedmultithreading.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//One stage of a Pipeline: its bounded input queue, its worker threads and its counters. See Pipeline for the big
+//picture.
+final class Stage {
+    //Put into the queue after the last real item, one per worker. Items are Objects in here so the pill can share the
+    //queue with them; the Pipeline's builder is what keeps the types straight.
+    static final Object POISON_PILL = new Object();
+
+    final String name;
+    final int workers;
+    final int batchSize;
+    final BlockingQueue<Object> queue;
+    private final StageFunction<Object, Object> function;
+    private Stage next; //null for the last stage.
+    private Pipeline<?> pipeline;
+
+    private final AtomicInteger liveWorkers;
+    final LongAdder itemsIn = new LongAdder();
+    final LongAdder itemsOut = new LongAdder();
+    final LongAdder failedBatches = new LongAdder();
+    final LongAdder busyNanos = new LongAdder();
+    final LongAdder blockedNanos = new LongAdder(); //Time spent waiting for room in the next stage's queue.
+
+    @SuppressWarnings("unchecked")
+    Stage(String name, int workers, int batchSize, int queueCapacity, StageFunction<?, ?> function) {
+        this.name = name;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.function = (StageFunction<Object, Object>) function;
+        this.liveWorkers = new AtomicInteger(workers);
+    }
+
+    void start(Stage next, Pipeline<?> pipeline) {
+        this.next = next;
+        this.pipeline = pipeline;
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::work, name + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private void work() {
+        List<Object> batch = new ArrayList<>(batchSize);
+        List<Object> output = new ArrayList<>(batchSize);
+        boolean done = false;
+        try {
+            while (!done) {
+                batch.add(queue.take()); //Wait for at least one item, then take whatever else is there.
+                queue.drainTo(batch, batchSize - 1);
+                int pill = batch.indexOf(POISON_PILL);
+                if (pill >= 0) {
+                    //Nothing comes after the pills, so everything behind the first one is a pill for another worker.
+                    for (int i = batch.size() - 1; i > pill; i--) queue.put(batch.remove(i));
+                    batch.remove(pill);
+                    done = true;
+                }
+                if (!batch.isEmpty()) process(batch, output);
+                batch.clear();
+                output.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            //The last worker out tells the next stage that nothing more is coming.
+            if (liveWorkers.decrementAndGet() == 0) {
+                if (next != null) next.finish();
+                else pipeline.finished();
+            }
+        }
+    }
+
+    private void process(List<Object> batch, List<Object> output) throws InterruptedException {
+        itemsIn.add(batch.size());
+        long start = System.nanoTime();
+        try {
+            function.apply(batch, output);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            failedBatches.increment();
+            pipeline.failed(name, e);
+            return;
+        } finally {
+            busyNanos.add(System.nanoTime() - start);
+        }
+        itemsOut.add(output.size());
+        if (next != null) {
+            long blockedFrom = System.nanoTime();
+            for (Object item : output) {
+                next.queue.put(item); //Blocks while the next stage is full: this is how backpressure travels upstream.
+            }
+            blockedNanos.add(System.nanoTime() - blockedFrom);
+        }
+    }
+
+    // No more items will be put into this stage's queue.
+    void finish() {
+        try {
+            for (int i = 0; i < workers; i++) {
+                queue.put(POISON_PILL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package edu.multithreading.advancedmultithreading.pipeline;
+
+import java.util.List;
+
+//What a stage does with one batch of its input: it adds whatever it produces to output, which is handed to the next
+//stage (the last stage produces nothing). A stage can add fewer or more items than it got, e.g. to filter or split.
+@FunctionalInterface
+public interface StageFunction<I, O> {
+
+    void apply(List<I> batch, List<O> output) throws Exception;
+}
@@ -0,0 +1,313 @@
+package edu.multithreading.batch;
+
+import edu.multithreading.nthprime.PrimeNumberUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+The nightly batch: tens of millions of n values in a file, their nth primes in another file, as fast as the disk and
+the cores allow.
+
+PrimeFileJobRunner reads its input line by line into Strings and passes every item through four queues, which is fine
+for a few hundred thousand queries, but at this size the per-item overhead is the job. Here:
+
+	1.	The input is memory-mapped, chunkBytes at a time. The bytes stay in the OS page cache and are parsed right
+	    there: no read() into a buffer, no String per line, no Long objects. Only one chunk is mapped at a time, so the
+	    memory used depends on chunkBytes, not on the size of the file.
+	2.	Every chunk is cut into one slice per thread (text slices end at a line break) and the slices are parsed,
+	    computed and formatted in parallel. Each thread writes its answers into an output buffer of its own, which it
+	    keeps for the next chunk.
+	3.	When all slices of a chunk are done, their buffers go to the output FileChannel with one gathering write(). The
+	    slices are written in the order they were cut, so the output is in input order, without any copying to put it
+	    back together.
+
+Two formats, picked with format= (the default is binary for a .bin input file, text otherwise):
+
+	•	text: one n per line in; "n<TAB>prime" per line out. Blank lines are skipped, lines that aren't a number are
+	    skipped and counted. Parsed straight from the bytes (ASCII digits), at most 18 digits.
+	•	binary: big-endian longs in; the pairs (n, prime) as big-endian longs out. No parsing at all.
+
+A value that can't be answered (n < 1, n > PrimeNumberUtil.MAX_N, or a computation that fails) doesn't stop the run:
+it gets an error marker instead of its prime ("n<TAB>error" in text, -1 in binary) and is counted in the summary.
+
+Arguments: input=<file> output=<file> format=text|binary threads=<cores> chunkBytes=16777216 reportSeconds=5.
+generate=<count> first writes count random queries in [1, maxN] (maxN=1000000) to the input file, in its format.
+ */
+public class MappedBatchRunner {
+    private static final int MAX_DIGITS = 18; //Every 18 digit number fits into a long.
+    private static final byte[] ERROR_MARKER = "error".getBytes(StandardCharsets.US_ASCII);
+
+    private final boolean binary;
+    private final int threads;
+    private final int chunkBytes;
+    private final long reportNanos;
+    private final ExecutorService workers;
+    private final List<Slice> slices = new ArrayList<>();
+
+    MappedBatchRunner(boolean binary, int threads, int chunkBytes, long reportSeconds) {
+        this.binary = binary;
+        this.threads = threads;
+        this.chunkBytes = binary ? Math.max(8, chunkBytes & ~7) : chunkBytes; //Whole longs only.
+        this.reportNanos = TimeUnit.SECONDS.toNanos(reportSeconds);
+        this.workers = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            slices.add(new Slice());
+        }
+    }
+
+    void run(Path input, Path output) throws IOException, InterruptedException, ExecutionException {
+        long records = 0, skipped = 0, errors = 0;
+        long start = System.nanoTime(), lastReport = start;
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            if (binary && size % 8 != 0) {
+                throw new IOException(input + " is not a whole number of longs (" + size + " bytes)");
+            }
+            for (long position = 0; position < size; ) {
+                MappedByteBuffer chunk = in.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(chunkBytes, size - position));
+                int length = binary || position + chunk.limit() == size ? chunk.limit() : lastLineEnd(chunk, position);
+
+                List<Future<?>> done = new ArrayList<>(threads);
+                int from = 0;
+                for (int i = 0; i < threads; i++) {
+                    int to = i == threads - 1 ? length : sliceEnd(chunk, (int) ((long) length * (i + 1) / threads),
+                            from, length);
+                    Slice slice = slices.get(i);
+                    slice.prepare(chunk, from, to);
+                    done.add(workers.submit(slice));
+                    from = to;
+                }
+                for (Future<?> future : done) {
+                    future.get();
+                }
+
+                ByteBuffer[] answers = new ByteBuffer[threads];
+                for (int i = 0; i < threads; i++) {
+                    Slice slice = slices.get(i);
+                    answers[i] = slice.out;
+                    records += slice.records;
+                    skipped += slice.skipped;
+                    errors += slice.errors;
+                }
+                while (hasRemaining(answers)) {
+                    out.write(answers); //Gathering write: all slices of the chunk in one system call (usually).
+                }
+                position += length;
+
+                long now = System.nanoTime();
+                if (now - lastReport >= reportNanos) {
+                    System.out.printf("%,d records (%.0f%% of the input), %,.0f records/s%n", records,
+                            100.0 * position / size, records / ((now - start) / 1e9));
+                    lastReport = now;
+                }
+            }
+        } finally {
+            workers.shutdown();
+        }
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        System.out.printf("%,d records in %.2f s: %,.0f records/s, %.1f MB/s of input%n", records, seconds,
+                records / seconds, Files.size(input) / seconds / (1 << 20));
+        if (errors > 0) {
+            System.out.printf("%,d values out of range or failed, marked as errors.%n", errors);
+        }
+        if (skipped > 0) {
+            System.out.printf("Skipped %,d lines that weren't a number.%n", skipped);
+        }
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) return true;
+        }
+        return false;
+    }
+
+    //A chunk that isn't the end of the file stops after its last line break; the line cut in half is read again at
+    //the start of the next chunk.
+    private static int lastLineEnd(MappedByteBuffer chunk, long position) throws IOException {
+        for (int i = chunk.limit() - 1; i >= 0; i--) {
+            if (chunk.get(i) == '\n') return i + 1;
+        }
+        throw new IOException("Line at byte " + position + " is longer than chunkBytes");
+    }
+
+    //Moves a slice boundary forward to the next line start (binary: to a whole long).
+    private int sliceEnd(MappedByteBuffer chunk, int target, int from, int length) {
+        if (binary) return Math.max(from, target & ~7);
+        int end = Math.max(from, target);
+        while (end < length && (end == 0 || chunk.get(end - 1) != '\n')) end++;
+        return end;
+    }
+
+    //One thread's part of a chunk. The output buffer is reused chunk after chunk and only ever grows.
+    private final class Slice implements Runnable {
+        private final byte[] digits = new byte[20];
+        private MappedByteBuffer in;
+        private int from, to;
+        private ByteBuffer out = ByteBuffer.allocateDirect(1 << 16);
+        private long records, skipped, errors;
+
+        void prepare(MappedByteBuffer in, int from, int to) {
+            this.in = in;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void run() {
+            out.clear();
+            records = 0;
+            skipped = 0;
+            errors = 0;
+            if (binary) {
+                for (int i = from; i < to; i += 8) {
+                    long n = in.getLong(i); //Absolute gets: the threads share the buffer without touching its position.
+                    ensureRoom(16);
+                    out.putLong(n).putLong(prime(n));
+                }
+            } else {
+                parseLines();
+            }
+            out.flip();
+            in = null; //Lets the chunk's mapping be unmapped once nobody uses it any more.
+        }
+
+        private void parseLines() {
+            long n = 0;
+            int count = 0;
+            boolean bad = false, numberEnded = false;
+            for (int i = from; i < to; i++) {
+                byte b = in.get(i);
+                if (b == '\n') {
+                    line(n, count, bad);
+                    n = 0;
+                    count = 0;
+                    bad = numberEnded = false;
+                } else if (b >= '0' && b <= '9') {
+                    if (numberEnded || ++count > MAX_DIGITS) bad = true;
+                    else n = n * 10 + (b - '0');
+                } else if (b == ' ' || b == '\t' || b == '\r') {
+                    numberEnded = count > 0;
+                } else {
+                    bad = true;
+                }
+            }
+            line(n, count, bad); //The last line of the file may have no line break.
+        }
+
+        private void line(long n, int count, boolean bad) {
+            if (bad) {
+                skipped++;
+            } else if (count > 0) {
+                ensureRoom(2 * digits.length + 2);
+                putDecimal(n);
+                out.put((byte) '\t');
+                long prime = prime(n);
+                if (prime < 0) out.put(ERROR_MARKER);
+                else putDecimal(prime);
+                out.put((byte) '\n');
+            }
+        }
+
+        //-1 for a value we can't answer, so one bad n doesn't abort the whole file.
+        private long prime(long n) {
+            records++;
+            if (n >= 1 && n <= PrimeNumberUtil.MAX_N) {
+                try {
+                    return PrimeNumberUtil.calculatePrime(n);
+                } catch (RuntimeException e) {
+                    //Counted below, like an n out of range.
+                }
+            }
+            errors++;
+            return -1;
+        }
+
+        private void putDecimal(long value) {
+            int start = digits.length;
+            do {
+                digits[--start] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            out.put(digits, start, digits.length - start);
+        }
+
+        private void ensureRoom(int bytes) {
+            if (out.remaining() < bytes) {
+                ByteBuffer bigger = ByteBuffer.allocateDirect(2 * out.capacity());
+                out.flip();
+                out = bigger.put(out);
+            }
+        }
+    }
+
+    private static void generateInput(Path input, boolean binary, long count, long maxN) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(input), 1 << 16);
+             DataOutputStream data = new DataOutputStream(stream)) {
+            for (long i = 0; i < count; i++) {
+                long n = random.nextLong(1, maxN + 1);
+                if (binary) data.writeLong(n);
+                else data.write((n + "\n").getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        Path input = Path.of("primes-in.txt"), output = null;
+        String format = null;
+        int threads = Runtime.getRuntime().availableProcessors(), chunkBytes = 16 << 20;
+        long generate = 0, maxN = 1_000_000, reportSeconds = 5;
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "input" -> input = Path.of(pair[1]);
+                case "output" -> output = Path.of(pair[1]);
+                case "format" -> format = pair[1];
+                case "threads" -> threads = Integer.parseInt(pair[1]);
+                case "chunkBytes" -> chunkBytes = Integer.parseInt(pair[1]);
+                case "reportSeconds" -> reportSeconds = Long.parseLong(pair[1]);
+                case "generate" -> generate = Long.parseLong(pair[1]);
+                case "maxN" -> maxN = Long.parseLong(pair[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        if (format == null) {
+            format = input.toString().endsWith(".bin") ? "binary" : "text";
+        }
+        boolean binary = switch (format) {
+            case "binary" -> true;
+            case "text" -> false;
+            default -> throw new IllegalArgumentException("Unknown format: " + format);
+        };
+        if (output == null) {
+            output = Path.of(binary ? "primes-out.bin" : "primes-out.txt");
+        }
+        if (generate > 0) {
+            generateInput(input, binary, generate, maxN);
+        }
+        new MappedBatchRunner(binary, threads, chunkBytes, reportSeconds).run(input, output);
+        System.out.println("Answers written to " + output);
+    }
+}
@@ -0,0 +1,282 @@
+package edu.multithreading.benchmark;
+
+import edu.multithreading.advancedmultithreading.executorservice.PrimeService;
+import edu.multithreading.metrics.LatencyHistogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+A workload driver that replaces the person typing numbers into a Scanner, so a configuration can be measured with
+the same traffic again and again.
+
+What it sends: values of n from a distribution.
+
+	•	uniform: every n in [1, maxN] equally likely.
+	•	zipf: a few small n are asked for very often and large ones rarely (P(n) ~ 1 / n^s, s = zipfExponent), which is
+	    what real traffic with popular keys looks like, and is what the shared PrimeTable is good at.
+	•	bimodal: mostly tiny requests (n <= 1000, a fraction smallShare of them) mixed with huge ones near maxN, the
+	    workload where one FIFO queue hurts the most (see CostAwareExecutor).
+
+How it sends them:
+
+	1.	Open loop (mode=open): requests arrive at a fixed rate, whether or not the earlier ones are done, like
+	    independent users do. Request i is due at start + i / rate, and its latency is measured from that due time,
+	    not from when we actually managed to send it. If the system (or this generator) stalls, the requests that
+	    should have been sent during the stall are charged for the time they had to wait. Measuring from the actual
+	    send time would leave those out and make the percentiles look far better than what users saw; this mistake is
+	    called coordinated omission. Both numbers are printed, so the difference is visible.
+	2.	Closed loop (mode=closed): concurrency users, each sending a request and waiting for its answer before sending
+	    the next one. This finds the maximum throughput, but its latencies say little about an overloaded system,
+	    because the users slow down along with it.
+
+Whom it sends them to (target=...): platform, sjf, forkjoin, virtual or semaphore is a PrimeService backend in this
+JVM (threads=<t> sets its size, or its permits for semaphore), and an http://host:port URL is a running
+PrimeHttpServer.
+
+Failed requests (errors, and timeouts after timeoutSeconds) are recorded in the latency percentiles too, with the time
+until they failed: leaving them out would hide exactly the tail the correction above is meant to show. The error
+count is printed next to the percentiles.
+
+Requests due during the first warmup seconds are sent but not recorded. Arguments (all optional):
+mode=open rate=1000 concurrency=16 duration=10 warmup=2 distribution=uniform maxN=100000 zipfExponent=1.1
+smallShare=0.95 target=platform threads=<cores> timeoutSeconds=30 seed=42
+ */
+public class LoadGenerator {
+
+    enum Distribution {
+        UNIFORM {
+            @Override
+            long next(SplittableRandom random, Settings settings) {
+                return random.nextLong(1, settings.maxN + 1);
+            }
+        },
+        ZIPF {
+            //Inverse of the continuous power law's CDF on [1, maxN + 1), which is close enough to the discrete Zipf
+            //distribution for generating load, and needs no table of maxN probabilities.
+            @Override
+            long next(SplittableRandom random, Settings settings) {
+                double s = settings.zipfExponent, u = random.nextDouble(), max = settings.maxN + 1.0;
+                double x = Math.abs(s - 1) < 1e-9 ? Math.pow(max, u)
+                        : Math.pow(u * (Math.pow(max, 1 - s) - 1) + 1, 1 / (1 - s));
+                return Math.min(settings.maxN, Math.max(1, (long) x));
+            }
+        },
+        BIMODAL {
+            @Override
+            long next(SplittableRandom random, Settings settings) {
+                if (random.nextDouble() < settings.smallShare) {
+                    return random.nextLong(1, Math.min(1000, settings.maxN) + 1);
+                }
+                return random.nextLong(Math.max(1, settings.maxN - settings.maxN / 10), settings.maxN + 1);
+            }
+        };
+
+        abstract long next(SplittableRandom random, Settings settings);
+    }
+
+    // Where the requests go. submit() must not block: the open loop has to keep its schedule.
+    interface Target extends AutoCloseable {
+        CompletableFuture<?> submit(long n);
+
+        @Override
+        void close();
+
+        static Target of(Settings settings) {
+            if (settings.target.startsWith("http://")) {
+                return http(settings.target, settings.timeoutSeconds);
+            }
+            PrimeService service = switch (settings.target) {
+                case "platform" -> PrimeService.platformPool(settings.threads);
+                case "sjf" -> PrimeService.shortestJobFirst(settings.threads);
+                case "forkjoin" -> PrimeService.forkJoin(settings.threads);
+                case "virtual" -> PrimeService.virtualThreads();
+                case "semaphore" -> PrimeService.semaphoreLimited(settings.threads);
+                default -> throw new IllegalArgumentException("Unknown target: " + settings.target);
+            };
+            return new Target() {
+                @Override
+                public CompletableFuture<?> submit(long n) {
+                    return service.submit(n, settings.timeoutSeconds, TimeUnit.SECONDS);
+                }
+
+                @Override
+                public void close() {
+                    service.close();
+                }
+            };
+        }
+
+        private static Target http(String baseUrl, long timeoutSeconds) {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                    .executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+            return new Target() {
+                @Override
+                public CompletableFuture<?> submit(long n) {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/prime?n=" + n))
+                            .timeout(Duration.ofSeconds(timeoutSeconds)).build();
+                    return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+                        if (response.statusCode() != 200) {
+                            throw new CompletionException(new IllegalStateException("HTTP " + response.statusCode()));
+                        }
+                        return response.body();
+                    });
+                }
+
+                @Override
+                public void close() {
+                    client.close();
+                }
+            };
+        }
+    }
+
+    static final class Settings {
+        String mode = "open", target = "platform";
+        Distribution distribution = Distribution.UNIFORM;
+        double rate = 1000, zipfExponent = 1.1, smallShare = 0.95;
+        int concurrency = 16, threads = Runtime.getRuntime().availableProcessors();
+        long maxN = 100_000, duration = 10, warmup = 2, timeoutSeconds = 30, seed = 42;
+
+        static Settings parse(String[] args) {
+            Settings settings = new Settings();
+            for (String arg : args) {
+                String[] pair = arg.split("=", 2);
+                switch (pair[0]) {
+                    case "mode" -> settings.mode = pair[1];
+                    case "target" -> settings.target = pair[1];
+                    case "distribution" -> settings.distribution = Distribution.valueOf(pair[1].toUpperCase());
+                    case "rate" -> settings.rate = Double.parseDouble(pair[1]);
+                    case "zipfExponent" -> settings.zipfExponent = Double.parseDouble(pair[1]);
+                    case "smallShare" -> settings.smallShare = Double.parseDouble(pair[1]);
+                    case "concurrency" -> settings.concurrency = Integer.parseInt(pair[1]);
+                    case "threads" -> settings.threads = Integer.parseInt(pair[1]);
+                    case "maxN" -> settings.maxN = Long.parseLong(pair[1]);
+                    case "duration" -> settings.duration = Long.parseLong(pair[1]);
+                    case "warmup" -> settings.warmup = Long.parseLong(pair[1]);
+                    case "timeoutSeconds" -> settings.timeoutSeconds = Long.parseLong(pair[1]);
+                    case "seed" -> settings.seed = Long.parseLong(pair[1]);
+                    default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+            }
+            return settings;
+        }
+    }
+
+    private final Settings settings;
+    private final LatencyHistogram corrected = new LatencyHistogram(); //From the time the request was due.
+    private final LatencyHistogram uncorrected = new LatencyHistogram(); //From the time it was actually sent.
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong outstanding = new AtomicLong();
+
+    LoadGenerator(Settings settings) {
+        this.settings = settings;
+    }
+
+    void runOpenLoop(Target target) {
+        SplittableRandom random = new SplittableRandom(settings.seed);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(settings.warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(settings.duration);
+        double interval = 1e9 / settings.rate;
+        for (long i = 0; ; i++) {
+            long due = start + (long) (i * interval);
+            if (due - end >= 0) break;
+            long wait = due - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            send(target, settings.distribution.next(random, settings), due, due - measureFrom >= 0);
+        }
+    }
+
+    void runClosedLoop(Target target) throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(settings.warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(settings.duration);
+        Thread[] users = new Thread[settings.concurrency];
+        for (int u = 0; u < users.length; u++) {
+            SplittableRandom random = new SplittableRandom(settings.seed + u);
+            users[u] = Thread.ofVirtual().start(() -> {
+                for (long now = System.nanoTime(); now - end < 0; now = System.nanoTime()) {
+                    //In a closed loop the request is due when the previous one came back, so both numbers agree.
+                    send(target, settings.distribution.next(random, settings), now, now - measureFrom >= 0)
+                            .exceptionally(failure -> null).join();
+                }
+            });
+        }
+        for (Thread user : users) user.join();
+    }
+
+    private CompletableFuture<?> send(Target target, long n, long due, boolean measured) {
+        outstanding.incrementAndGet();
+        long sent = System.nanoTime();
+        CompletableFuture<?> response;
+        try {
+            response = target.submit(n);
+        } catch (RuntimeException e) {
+            //Thrown instead of returned (a rejected submission, a closed service): turned into a failed future, so it
+            //goes through the same bookkeeping below and outstanding can't leak.
+            response = CompletableFuture.failedFuture(e);
+        }
+        return response.whenComplete((result, failure) -> {
+            long now = System.nanoTime();
+            if (measured) {
+                if (failure == null) completed.increment();
+                else failed.increment();
+                corrected.record(now - due);
+                uncorrected.record(now - sent);
+            }
+            outstanding.decrementAndGet();
+        });
+    }
+
+    // Waits for the requests still in flight. They were sent during the measured period, so they count.
+    void awaitOutstanding() throws InterruptedException {
+        long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.timeoutSeconds + 5);
+        while (outstanding.get() > 0 && System.nanoTime() - giveUp < 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    void printReport() {
+        double seconds = settings.duration;
+        System.out.printf("%s loop, %s distribution (maxN %d), target %s: %d completed (%.1f/s), %d failed%n",
+                settings.mode, settings.distribution.name().toLowerCase(), settings.maxN, settings.target,
+                completed.sum(), completed.sum() / seconds, failed.sum());
+        System.out.printf("%-36s %10s %10s %10s %10s %10s %10s%n", "latency (ms), errors included", "p50", "p90",
+                "p99", "p99.9", "max", "errors");
+        printRow("corrected (from intended start)", corrected.snapshot(), failed.sum());
+        printRow("uncorrected (from actual send)", uncorrected.snapshot(), failed.sum());
+    }
+
+    private static void printRow(String label, LatencyHistogram.Snapshot snapshot, long errors) {
+        System.out.printf("%-36s %10.3f %10.3f %10.3f %10.3f %10.3f %10d%n", label, snapshot.percentileMillis(0.50),
+                snapshot.percentileMillis(0.90), snapshot.percentileMillis(0.99), snapshot.percentileMillis(0.999),
+                snapshot.maxMillis(), errors);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Settings settings = Settings.parse(args);
+        LoadGenerator generator = new LoadGenerator(settings);
+        try (Target target = Target.of(settings)) {
+            switch (settings.mode) {
+                case "open" -> generator.runOpenLoop(target);
+                case "closed" -> generator.runClosedLoop(target);
+                default -> throw new IllegalArgumentException("Unknown mode: " + settings.mode);
+            }
+            generator.awaitOutstanding();
+        }
+        generator.printReport();
+    }
+}
@@ -0,0 +1,243 @@
+package edu.multithreading.benchmark;
+
+import edu.multithreading.nthprime.SegmentedSieve;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+Runs the same prime workload through every execution strategy used in this project and prints throughput and latency
+percentiles for each one, for every thread count asked for.
+
+	•	Every strategy gets exactly the same n values: they are drawn once per distribution, from LoadGenerator's
+	    distributions (uniform, zipf for skewed traffic, bimodal for a mix of tiny and huge requests) with one fixed
+	    seed. Every task calls SegmentedSieve.nthPrime() directly. The shared PrimeTable would turn every repeated n
+	    into an array lookup, which measures the cache and not the strategy.
+	•	Every prime is kept and summed into a checksum that is printed with the results, so the JIT can't drop the
+	    computation as dead code. The checksum is the same for every strategy of a distribution, which also shows that
+	    they all computed the same answers.
+	•	Latency of a task is measured from the moment it is handed to the strategy until its result is ready, so time
+	    spent waiting in a queue or for a semaphore permit counts.
+	•	Warmup iterations run first and are thrown away, so the JIT has compiled the sieve before anything is measured.
+
+The project is a plain source tree without a build tool, so instead of a JMH module this is a self-contained main.
+Arguments (all optional): tasks=2000 maxN=100000 threads=1,2,4,8 warmup=2 iterations=5 seed=42
+distributions=uniform,zipf,bimodal zipfExponent=1.1 smallShare=0.95
+ */
+public class PrimeStrategyBenchmark {
+
+    enum Strategy {
+        RAW_THREADS {
+            @Override
+            void run(int[] ns, int threads, long[] latencies, int[] primes) throws InterruptedException {
+                Thread[] workers = new Thread[ns.length];
+                for (int i = 0; i < ns.length; i++) {
+                    workers[i] = new Thread(task(ns, latencies, primes, i, System.nanoTime()));
+                    workers[i].start();
+                }
+                for (Thread worker : workers) worker.join();
+            }
+        },
+        DAEMON_THREADS {
+            @Override
+            void run(int[] ns, int threads, long[] latencies, int[] primes) throws InterruptedException {
+                Thread[] workers = new Thread[ns.length];
+                for (int i = 0; i < ns.length; i++) {
+                    workers[i] = new Thread(task(ns, latencies, primes, i, System.nanoTime()));
+                    workers[i].setDaemon(true);
+                    workers[i].start();
+                }
+                for (Thread worker : workers) worker.join();
+            }
+        },
+        FIXED_POOL {
+            @Override
+            void run(int[] ns, int threads, long[] latencies, int[] primes) throws InterruptedException {
+                runOn(Executors.newFixedThreadPool(threads), ns, latencies, primes);
+            }
+        },
+        CACHED_POOL {
+            @Override
+            void run(int[] ns, int threads, long[] latencies, int[] primes) throws InterruptedException {
+                runOn(Executors.newCachedThreadPool(), ns, latencies, primes);
+            }
+        },
+        SINGLE_THREAD {
+            @Override
+            void run(int[] ns, int threads, long[] latencies, int[] primes) throws InterruptedException {
+                runOn(Executors.newSingleThreadExecutor(), ns, latencies, primes);
+            }
+        },
+        COMPLETABLE_FUTURE_COMMON_POOL {
+            @Override
+            void run(int[] ns, int threads, long[] latencies, int[] primes) {
+                CompletableFuture<?>[] futures = new CompletableFuture<?>[ns.length];
+                for (int i = 0; i < ns.length; i++) {
+                    futures[i] = CompletableFuture.runAsync(task(ns, latencies, primes, i, System.nanoTime()));
+                }
+                CompletableFuture.allOf(futures).join();
+            }
+        },
+        COMPLETABLE_FUTURE_CUSTOM_POOL {
+            @Override
+            void run(int[] ns, int threads, long[] latencies, int[] primes) throws InterruptedException {
+                ExecutorService executorService = Executors.newFixedThreadPool(threads);
+                CompletableFuture<?>[] futures = new CompletableFuture<?>[ns.length];
+                for (int i = 0; i < ns.length; i++) {
+                    futures[i] = CompletableFuture.runAsync(task(ns, latencies, primes, i, System.nanoTime()), executorService);
+                }
+                CompletableFuture.allOf(futures).join();
+                shutdown(executorService);
+            }
+        },
+        FORK_JOIN {
+            @Override
+            void run(int[] ns, int threads, long[] latencies, int[] primes) throws InterruptedException {
+                runOn(new ForkJoinPool(threads), ns, latencies, primes);
+            }
+        },
+        SEMAPHORE_GATED_THREADS {
+            @Override
+            void run(int[] ns, int threads, long[] latencies, int[] primes) throws InterruptedException {
+                Semaphore semaphore = new Semaphore(threads, true);
+                Thread[] workers = new Thread[ns.length];
+                for (int i = 0; i < ns.length; i++) {
+                    Runnable task = task(ns, latencies, primes, i, System.nanoTime());
+                    workers[i] = new Thread(() -> {
+                        semaphore.acquireUninterruptibly();
+                        try {
+                            task.run();
+                        } finally {
+                            semaphore.release();
+                        }
+                    });
+                    workers[i].start();
+                }
+                for (Thread worker : workers) worker.join();
+            }
+        };
+
+        // Some strategies ignore the thread count (a single thread executor, or one thread per task). They are still
+        // run for each count, which shows the fixed cost of the strategy next to the ones that do scale.
+        abstract void run(int[] ns, int threads, long[] latencies, int[] primes) throws InterruptedException;
+
+        static Runnable task(int[] ns, long[] latencies, int[] primes, int i, long submitted) {
+            return () -> {
+                primes[i] = SegmentedSieve.nthPrime(ns[i]);
+                latencies[i] = System.nanoTime() - submitted;
+            };
+        }
+
+        static void runOn(ExecutorService executorService, int[] ns, long[] latencies, int[] primes) throws InterruptedException {
+            CountDownLatch done = new CountDownLatch(ns.length);
+            for (int i = 0; i < ns.length; i++) {
+                Runnable task = task(ns, latencies, primes, i, System.nanoTime());
+                executorService.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+            shutdown(executorService);
+        }
+
+        static void shutdown(ExecutorService executorService) throws InterruptedException {
+            executorService.shutdown();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int tasks = 2000, maxN = 100_000, warmup = 2, iterations = 5;
+        long seed = 42;
+        int[] threadCounts = {1, 2, 4, 8};
+        LoadGenerator.Distribution[] distributions = LoadGenerator.Distribution.values();
+        LoadGenerator.Settings settings = new LoadGenerator.Settings(); //Only its distribution parameters are used.
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "tasks" -> tasks = Integer.parseInt(pair[1]);
+                case "maxN" -> maxN = Integer.parseInt(pair[1]);
+                case "warmup" -> warmup = Integer.parseInt(pair[1]);
+                case "iterations" -> iterations = Integer.parseInt(pair[1]);
+                case "seed" -> seed = Long.parseLong(pair[1]);
+                case "threads" -> threadCounts = Arrays.stream(pair[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "distributions" -> distributions = Arrays.stream(pair[1].split(","))
+                        .map(name -> LoadGenerator.Distribution.valueOf(name.toUpperCase()))
+                        .toArray(LoadGenerator.Distribution[]::new);
+                case "zipfExponent" -> settings.zipfExponent = Double.parseDouble(pair[1]);
+                case "smallShare" -> settings.smallShare = Double.parseDouble(pair[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        settings.maxN = maxN;
+        System.out.printf("%d tasks, n in [1, %d], seed %d, %d warmup + %d measured iterations%n%n",
+                tasks, maxN, seed, warmup, iterations);
+        for (LoadGenerator.Distribution distribution : distributions) {
+            //A fresh generator with the same seed for every distribution, so each one can be rerun on its own.
+            SplittableRandom random = new SplittableRandom(seed);
+            int[] ns = new int[tasks];
+            for (int i = 0; i < tasks; i++) {
+                ns[i] = (int) distribution.next(random, settings);
+            }
+            System.out.printf("%s distribution%n", distribution.name().toLowerCase());
+            run(ns, threadCounts, warmup, iterations);
+        }
+    }
+
+    private static void run(int[] ns, int[] threadCounts, int warmup, int iterations) throws InterruptedException {
+        int tasks = ns.length;
+        System.out.printf("%-32s %7s %12s %10s %10s %10s %10s %16s%n",
+                "strategy", "threads", "tasks/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "checksum");
+
+        for (int threads : threadCounts) {
+            for (Strategy strategy : Strategy.values()) {
+                long[] latencies = new long[tasks];
+                int[] primes = new int[tasks];
+                long checksum = 0;
+                for (int i = 0; i < warmup; i++) {
+                    strategy.run(ns, threads, latencies, primes);
+                    checksum += sum(primes);
+                }
+                long[] all = new long[tasks * iterations];
+                long elapsed = 0;
+                for (int i = 0; i < iterations; i++) {
+                    long start = System.nanoTime();
+                    strategy.run(ns, threads, latencies, primes);
+                    elapsed += System.nanoTime() - start;
+                    checksum += sum(primes);
+                    System.arraycopy(latencies, 0, all, i * tasks, tasks);
+                }
+                Arrays.sort(all);
+                System.out.printf("%-32s %7d %12.0f %10.3f %10.3f %10.3f %10.3f %16d%n",
+                        strategy, threads, (double) all.length / elapsed * 1e9,
+                        percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), all[all.length - 1] / 1e6,
+                        checksum);
+            }
+            System.out.println();
+        }
+    }
+
+    private static long sum(int[] primes) {
+        long sum = 0;
+        for (int prime : primes) sum += prime;
+        return sum;
+    }
+
+    // Value at the given quantile of sorted nanosecond samples, in milliseconds.
+    static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
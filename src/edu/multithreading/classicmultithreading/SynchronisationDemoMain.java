@@ -1,6 +1,8 @@
 package edu.multithreading.classicmultithreading;
 
 
+//increment() sleeps while run() holds the monitor lock, so the other threads visibly queue up behind it. The same lock
+//without the sleep is advancedmultithreading.counters.SynchronizedCounter.
 class Counter implements Runnable{
     private int value = 0;
 
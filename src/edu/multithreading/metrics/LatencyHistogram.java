@@ -0,0 +1,144 @@
+package edu.multithreading.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+A latency histogram cheap enough to record every single request, in the spirit of HdrHistogram.
+
+	1.	Log-linear buckets: every power of two is split into 32 equal sub-buckets, so any value is kept with about 3%
+	    precision, from 1 ns up to Long.MAX_VALUE, in 1888 counters. Finding the bucket is a leading-zero count and a
+	    shift, and nothing is allocated.
+	2.	No shared hot spot: the counters are split into stripes (one per core, rounded up to a power of two) and a thread
+	    always records into the stripe its id maps to. Threads on different stripes never touch the same counters, so
+	    recording stays a couple of uncontended atomic increments, the same trick LongAdder uses.
+	3.	Snapshots are taken on the reader's side: snapshot() adds the stripes up. reset() doesn't clear anything the
+	    writers are using, it only remembers the current totals as a baseline that later snapshots subtract. That way a
+	    reset can't lose a value that is being recorded at the same moment.
+
+Values are nanoseconds, and the snapshot reports them in milliseconds.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final int SUM = BUCKETS; //The last slot of every stripe holds the sum of the recorded values.
+
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+    private long[] baseline = new long[BUCKETS + 1]; //Guarded by this.
+
+    public LatencyHistogram() {
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+        this.stripes = new AtomicLongArray[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS + 1);
+        }
+        this.mask = count - 1;
+    }
+
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        AtomicLongArray stripe = stripes[(int) ((Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) >>> 40) & mask];
+        stripe.getAndIncrement(bucket(nanos));
+        stripe.getAndAdd(SUM, nanos);
+    }
+
+    // Everything recorded since the last reset.
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(minus(totals(), baseline));
+    }
+
+    public synchronized void reset() {
+        baseline = totals();
+    }
+
+    // Everything recorded since the last reset, and a reset, as one step (for interval reports).
+    public synchronized Snapshot snapshotAndReset() {
+        long[] totals = totals();
+        Snapshot snapshot = new Snapshot(minus(totals, baseline));
+        baseline = totals;
+        return snapshot;
+    }
+
+    private long[] totals() {
+        long[] totals = new long[BUCKETS + 1];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i <= BUCKETS; i++) {
+                totals[i] += stripe.get(i);
+            }
+        }
+        return totals;
+    }
+
+    private static long[] minus(long[] totals, long[] baseline) {
+        long[] difference = new long[totals.length];
+        for (int i = 0; i < totals.length; i++) {
+            difference[i] = totals[i] - baseline[i];
+        }
+        return difference;
+    }
+
+    //Values below 64 get a bucket of their own. Above that, shift is how many low bits don't fit into the 6 significant
+    //bits we keep, and (value >>> shift) is between 32 and 63.
+    static int bucket(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long lowestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    static long highestValue(int bucket) {
+        int shift = bucket < 2 * SUB_BUCKETS ? 0 : bucket / SUB_BUCKETS - 1;
+        return lowestValue(bucket) + (1L << shift) - 1;
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) total += counts[i];
+            this.count = total;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public double meanMillis() {
+            return count == 0 ? 0 : counts[SUM] / (double) count / 1e6;
+        }
+
+        // The value at the given quantile (0.99 for p99), as the highest value of its bucket, so it is never
+        // under-reported by more than the bucket precision.
+        public double percentileMillis(double quantile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) return highestValue(i) / 1e6;
+            }
+            return maxMillis();
+        }
+
+        public double maxMillis() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (counts[i] != 0) return highestValue(i) / 1e6;
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("p50 %.3f, p90 %.3f, p99 %.3f, max %.3f ms", percentileMillis(0.50),
+                    percentileMillis(0.90), percentileMillis(0.99), maxMillis());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package edu.multithreading.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//The StrategyMetrics of every strategy in the process, by name. Like PrimeTable there is one shared instance, so a
+//front-end and the service it uses report into the same place without passing the registry around.
+public final class MetricsRegistry {
+    private static final MetricsRegistry SHARED = new MetricsRegistry();
+
+    private final ConcurrentMap<String, StrategyMetrics> strategies = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry shared() {
+        return SHARED;
+    }
+
+    // Looked up once per strategy (not per request), the returned object is what the hot path uses.
+    public StrategyMetrics strategy(String name) {
+        return strategies.computeIfAbsent(name, StrategyMetrics::new);
+    }
+
+    public List<StrategyMetrics.Snapshot> snapshot() {
+        List<StrategyMetrics.Snapshot> snapshots = new ArrayList<>();
+        strategies.values().forEach(metrics -> snapshots.add(metrics.snapshot()));
+        return snapshots;
+    }
+
+    public List<StrategyMetrics.Snapshot> snapshotAndReset() {
+        List<StrategyMetrics.Snapshot> snapshots = new ArrayList<>();
+        strategies.values().forEach(metrics -> snapshots.add(metrics.snapshotAndReset()));
+        return snapshots;
+    }
+
+    public void reset() {
+        strategies.values().forEach(StrategyMetrics::reset);
+    }
+}
@@ -0,0 +1,60 @@
+package edu.multithreading.metrics;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/*
+Prints what happened since the previous report, one line per strategy: throughput, how many requests are still in
+flight, and the queue wait, compute and end-to-end percentiles. It is a Runnable, meant to be scheduled:
+
+	scheduledExecutorService.scheduleAtFixedRate(new MetricsReporter(MetricsRegistry.shared(), System.out), 5, 5, SECONDS);
+
+Every run resets the registry (snapshotAndReset), so each report covers one interval only, not the whole run.
+snapshotReport() reads the registry without resetting it, for readers that poll on their own schedule.
+ */
+public class MetricsReporter implements Runnable {
+    private final MetricsRegistry registry;
+    private final PrintStream out;
+    private long lastReport = System.nanoTime();
+
+    public MetricsReporter(MetricsRegistry registry, PrintStream out) {
+        this.registry = registry;
+        this.out = out;
+    }
+
+    @Override
+    public void run() {
+        out.print(report()); //One print call, so the lines of a report don't get mixed with other output.
+    }
+
+    // The same report as a String (e.g. to send it to a client), which also starts the next interval.
+    public synchronized String report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastReport) / 1e9);
+        lastReport = now;
+        return format(String.format("%nMetrics for the last %.1f s:%n", seconds), registry.snapshotAndReset(), seconds);
+    }
+
+    // Everything since the registry was last reset (by a report() or since the start), without resetting it: a
+    // client polling this can't take the interval away from the periodic report or from other clients.
+    public String snapshotReport() {
+        return format(String.format("%nMetrics since the last reset:%n"), registry.snapshot(), 0);
+    }
+
+    // seconds is the length of the interval, 0 when it isn't known (then no rate is printed).
+    private static String format(String heading, List<StrategyMetrics.Snapshot> snapshots, double seconds) {
+        StringBuilder report = new StringBuilder(heading);
+        for (StrategyMetrics.Snapshot snapshot : snapshots) {
+            String rate = seconds > 0 ? String.format(" (%.1f/s)", snapshot.completed() / seconds) : "";
+            report.append(String.format("  %s: %d submitted, %d completed%s, %d failed, %d in flight%n",
+                    snapshot.name(), snapshot.submitted(), snapshot.completed(), rate,
+                    snapshot.failed(), snapshot.inFlight()));
+            if (snapshot.queueWait().count() > 0) {
+                report.append("    queue wait ").append(snapshot.queueWait()).append('\n');
+                report.append("    compute    ").append(snapshot.compute()).append('\n');
+                report.append("    end to end ").append(snapshot.endToEnd()).append('\n');
+            }
+        }
+        return report.toString();
+    }
+}
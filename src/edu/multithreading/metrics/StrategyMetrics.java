@@ -0,0 +1,117 @@
+package edu.multithreading.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Everything we measure about one way of running requests (a pool, a ForkJoinPool, a thread per request...):
+
+	•	counters: submitted, completed and failed requests (LongAdders, so many threads can count without contending).
+	•	queue wait: from submission until a thread starts on the request.
+	•	compute: from that start until the answer is there.
+	•	end to end: from submission until the answer is there, which is what the user actually waits.
+
+A request reports itself in three steps, passing along the nanoTime each step returns:
+
+	long submittedAt = metrics.submitted();                  // where the request is handed over
+	long startedAt = metrics.started(submittedAt);           // first thing in the task
+	metrics.completed(submittedAt, startedAt);               // or failed(), when it ends without an answer
+
+timed() does the same for a plain Runnable.
+ */
+public final class StrategyMetrics {
+    private final String name;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram compute = new LatencyHistogram();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private long[] baseline = new long[3]; //submitted, completed, failed at the last reset. Guarded by this.
+
+    StrategyMetrics(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long submitted() {
+        submitted.increment();
+        return System.nanoTime();
+    }
+
+    public long started(long submittedAt) {
+        long now = System.nanoTime();
+        queueWait.record(now - submittedAt);
+        return now;
+    }
+
+    // Returns the compute time, for callers that want to feed it somewhere else as well.
+    public long completed(long submittedAt, long startedAt) {
+        long now = System.nanoTime();
+        compute.record(now - startedAt);
+        endToEnd.record(now - submittedAt);
+        completed.increment();
+        return now - startedAt;
+    }
+
+    public void failed() {
+        failed.increment();
+    }
+
+    // The task counts as submitted now, and as failed if it throws.
+    public Runnable timed(Runnable task) {
+        long submittedAt = submitted();
+        return () -> {
+            long startedAt = started(submittedAt);
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) {
+                failed();
+                throw e;
+            }
+            completed(submittedAt, startedAt);
+        };
+    }
+
+    // Requests submitted but not finished yet, right now (never affected by reset()).
+    public long inFlight() {
+        long finished = completed.sum() + failed.sum();
+        return Math.max(0, submitted.sum() - finished);
+    }
+
+    public synchronized Snapshot snapshot() {
+        return snapshot(false);
+    }
+
+    public synchronized Snapshot snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    public synchronized void reset() {
+        snapshot(true);
+    }
+
+    private Snapshot snapshot(boolean reset) {
+        //The finished requests are counted before the submitted ones, so a request finishing in between can't make
+        //inFlight negative.
+        long completions = completed.sum();
+        long failures = failed.sum();
+        long[] totals = {submitted.sum(), completions, failures};
+        Snapshot snapshot = new Snapshot(name, totals[0] - baseline[0], totals[1] - baseline[1],
+                totals[2] - baseline[2], Math.max(0, totals[0] - totals[1] - totals[2]),
+                reset ? queueWait.snapshotAndReset() : queueWait.snapshot(),
+                reset ? compute.snapshotAndReset() : compute.snapshot(),
+                reset ? endToEnd.snapshotAndReset() : endToEnd.snapshot());
+        if (reset) {
+            baseline = totals;
+        }
+        return snapshot;
+    }
+
+    public record Snapshot(String name, long submitted, long completed, long failed, long inFlight,
+                           LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot compute,
+                           LatencyHistogram.Snapshot endToEnd) {
+    }
+}
@@ -0,0 +1,73 @@
+package edu.multithreading.nthprime;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/*
+Cooperative cancellation for the prime computations.
+
+Java can't stop a thread from the outside (Thread.stop() is gone, see PrimeNumberWithConcurrencyHoldingThreadsMain), so
+Future.cancel(true) and shutdownNow() only set the interrupt flag and hope the task looks at it. The sieve never did, so
+an abandoned huge n kept a core busy until it was done.
+
+The engine now calls throwIfCancelled() at every segment (or chunk) boundary. That is one check per 64K numbers, so the
+hot loop itself doesn't pay anything, yet a cancelled computation stops within about a millisecond. A token trips when:
+
+	1.	cancel() has been called on it (e.g. by whoever holds the CompletableFuture),
+	2.	its deadline has passed, or
+	3.	the computing thread has been interrupted (Future.cancel(true), shutdownNow()). Every token checks this, even
+	    none(), so interrupting a thread stuck in calculatePrime() now works.
+
+Tripping throws java.util.concurrent.CancellationException. The interrupt flag is left as it is.
+ */
+public final class CancellationToken {
+    private static final CancellationToken NONE = new CancellationToken(Long.MAX_VALUE, false);
+
+    private final long deadline; //System.nanoTime() value, only meaningful when hasDeadline.
+    private final boolean hasDeadline;
+    private volatile boolean cancelled;
+
+    private CancellationToken(long deadline, boolean hasDeadline) {
+        this.deadline = deadline;
+        this.hasDeadline = hasDeadline;
+    }
+
+    //A token that only reacts to the thread being interrupted.
+    public static CancellationToken none() {
+        return NONE;
+    }
+
+    //A token without a deadline that can be cancelled with cancel().
+    public static CancellationToken create() {
+        return new CancellationToken(0, false);
+    }
+
+    public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+        return new CancellationToken(System.nanoTime() + unit.toNanos(timeout), true);
+    }
+
+    public void cancel() {
+        if (this == NONE) {
+            throw new UnsupportedOperationException("The shared none() token can't be cancelled");
+        }
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled
+                || (hasDeadline && System.nanoTime() - deadline >= 0)
+                || Thread.currentThread().isInterrupted();
+    }
+
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Prime computation cancelled");
+        }
+        if (hasDeadline && System.nanoTime() - deadline >= 0) {
+            throw new CancellationException("Prime computation deadline exceeded");
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Prime computation interrupted");
+        }
+    }
+}
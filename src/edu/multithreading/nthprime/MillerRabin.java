@@ -0,0 +1,102 @@
+package edu.multithreading.nthprime;
+
+/*
+Deterministic Miller–Rabin primality test for every non-negative long.
+
+Miller–Rabin: write n - 1 = d * 2^s with d odd. For a witness a, n passes if a^d ≡ 1 (mod n) or a^(d * 2^r) ≡ -1
+(mod n) for some 0 <= r < s. Every prime passes for every witness, and for n < 2^64 it is known that no composite passes
+all of the seven witnesses below (Jim Sinclair's set), so the test is exact, not probabilistic.
+
+Montgomery multiplication: a^d mod n needs about 64 modular multiplications of 64-bit numbers, and a 128-bit product
+followed by a division is slow. In Montgomery form (x is stored as xR mod n with R = 2^64) the reduction of a 128-bit
+product only needs multiplications and a shift, because dividing by R is free. Math.unsignedMultiplyHigh gives the
+upper 64 bits of the product, so the whole test runs on longs and allocates nothing.
+
+Small numbers (below 2^16) are answered from a bitmap of the odd primes, and other numbers are first checked against
+a few small primes, which throws out most composites before any exponentiation.
+ */
+final class MillerRabin {
+    private static final long[] WITNESSES = {2, 325, 9375, 28178, 450775, 9780504, 1795265022};
+    private static final int[] SMALL_DIVISORS = {3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53};
+    private static final int BITMAP_LIMIT = 1 << 16;
+    private static final long[] ODD_PRIME_BITS = new long[BITMAP_LIMIT / 128]; // Bit i set means 2i + 1 is prime.
+
+    static {
+        for (int p : SegmentedSieve.basePrimes(BITMAP_LIMIT)) {
+            ODD_PRIME_BITS[p >>> 7] |= 1L << (p >>> 1);
+        }
+    }
+
+    private MillerRabin() {
+    }
+
+    static boolean isPrime(long n) {
+        if (n < 2) return false;
+        if ((n & 1) == 0) return n == 2;
+        if (n < BITMAP_LIMIT) {
+            return (ODD_PRIME_BITS[(int) (n >>> 7)] & (1L << (n >>> 1))) != 0;
+        }
+        for (int p : SMALL_DIVISORS) {
+            if (n % p == 0) return false;
+        }
+
+        long d = n - 1;
+        int s = Long.numberOfTrailingZeros(d);
+        d >>>= s;
+        long inverse = inverse(n);
+        long one = Long.remainderUnsigned(-n, n); // R mod n, which is 1 in Montgomery form.
+        long minusOne = n - one;
+        long r2 = one; // R² mod n, needed to bring witnesses into Montgomery form.
+        for (int i = 0; i < 64; i++) {
+            r2 <<= 1; // r2 < n < 2^63, so this cannot overflow as an unsigned number.
+            if (Long.compareUnsigned(r2, n) >= 0) r2 -= n;
+        }
+
+        for (long witness : WITNESSES) {
+            long a = witness % n;
+            if (a == 0) continue;
+            long x = pow(multiply(a, r2, n, inverse), d, one, n, inverse);
+            if (x == one || x == minusOne) continue;
+            boolean composite = true;
+            for (int r = 1; r < s; r++) {
+                x = multiply(x, x, n, inverse);
+                if (x == minusOne) {
+                    composite = false;
+                    break;
+                }
+            }
+            if (composite) return false;
+        }
+        return true;
+    }
+
+    // Montgomery product a * b / R mod n, for a, b < n < 2^63 (REDC with n⁻¹ mod 2^64).
+    private static long multiply(long a, long b, long n, long inverse) {
+        long low = a * b;
+        long high = Math.unsignedMultiplyHigh(a, b);
+        long m = low * inverse; // Chosen so that m * n has the same low 64 bits as a * b.
+        long mnHigh = Math.unsignedMultiplyHigh(m, n);
+        long t = high - mnHigh;
+        return Long.compareUnsigned(high, mnHigh) < 0 ? t + n : t;
+    }
+
+    private static long pow(long base, long exponent, long one, long n, long inverse) {
+        long result = one;
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) result = multiply(result, base, n, inverse);
+            base = multiply(base, base, n, inverse);
+            exponent >>>= 1;
+        }
+        return result;
+    }
+
+    // n⁻¹ mod 2^64 for odd n. Newton's iteration doubles the number of correct bits each round (n is its own inverse
+    // mod 8, so 3 bits are right to start with).
+    private static long inverse(long n) {
+        long x = n;
+        for (int i = 0; i < 5; i++) {
+            x *= 2 - n * x;
+        }
+        return x;
+    }
+}
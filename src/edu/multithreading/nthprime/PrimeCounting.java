@@ -0,0 +1,274 @@
+package edu.multithreading.nthprime;
+
+import java.util.Arrays;
+
+/*
+Prime counting with Lehmer's formula, used for nth primes that are too big for a sieve from 2.
+
+Sieving up to the nth prime needs work (and with a table, memory) linear in the answer. For n around 10^12 the answer
+is about 3 * 10^13, far too much to sieve. Instead:
+
+	1.	Estimate: Li(x) (the logarithmic integral) is an excellent estimate of π(x), the number of primes up to x.
+	    Inverting it gives an x that lies just below the nth prime (Li(x) > π(x) for every x we can reach).
+	2.	Count: π(x) is computed exactly with Lehmer's formula, which only needs the primes up to about x^(2/3) and
+	    runs in roughly O(x^(3/4)) time instead of O(x log log x).
+	3.	Sieve the gap: the nth prime is then found by sieving upward from x and counting the last few primes. The gap
+	    is about √x wide, which is a few hundred segments even for 10^13.
+
+Lehmer's formula (a = π(x^¼), b = π(x^½), c = π(x^⅓), p(i) is the ith prime):
+
+	π(x) = φ(x, a) + (b + a - 2)(b - a + 1) / 2 - Σ[a < i <= b] π(x / p(i))
+	                                            - Σ[a < i <= c] Σ[i <= j <= π(√(x / p(i)))] (π(x / p(i) / p(j)) - (j - 1))
+
+where φ(x, a) counts the numbers up to x that are not divisible by any of the first a primes.
+
+Memory: the small-π table is a bitmap of odd numbers (1 bit each) plus a running count per 64-bit word, so a table
+covering SMALL_LIMIT = 2^26 numbers costs about 6 MB. Larger arguments recurse into the formula again. The formula
+walks the primes up to √x in order, and those come straight out of the bitmap; only the primes it indexes at random
+(up to x^(3/8), and never more than SMALL_LIMIT^(3/4)) are kept as a list, about 60,000 ints. A list of every prime up
+to SMALL_LIMIT would add another 16 MB.
+ */
+public final class PrimeCounting {
+    static final long SMALL_LIMIT = 1L << 26;
+    //The largest n nthPrime() answers. π(x) needs the primes up to √x, which the small table only has for
+    //x < SMALL_LIMIT², so the estimate x = Li⁻¹(n) has to stay below that: n up to about 1.3 * 10^14. The 0.1% margin
+    //covers the rounding of the floating point estimate.
+    static final long MAX_N = (long) (0.999 * li((double) (SMALL_LIMIT - 1) * (SMALL_LIMIT - 1)));
+    private static final int[] WHEEL_PRIMES = {2, 3, 5, 7, 11, 13};
+    private static final int WHEEL = 2 * 3 * 5 * 7 * 11 * 13;
+    private static final int WHEEL_TOTIENT = 1 * 2 * 4 * 6 * 10 * 12;
+
+    private final long limit;
+    private final long[] oddBits; // Bit i set means 2i + 1 is prime.
+    private final int[] countBefore; // Primes (counting 2) below the first number of each word.
+    private final int[] primes; // primes[i] is the (i + 1)th prime, up to limit^(3/4).
+    private final short[] phiWheel; // φ(x, 6) for 0 <= x < WHEEL.
+
+    private static volatile PrimeCounting shared;
+
+    PrimeCounting(long limit) {
+        this.limit = limit;
+        int words = (int) (limit / 128 + 1);
+        oddBits = new long[words];
+        countBefore = new int[words];
+
+        int[] basePrimes = SegmentedSieve.basePrimes((int) SegmentedSieve.isqrt(limit) + 1);
+        boolean[] composite = new boolean[SegmentedSieve.SEGMENT_SIZE];
+        for (long low = 1; low <= limit; low += SegmentedSieve.SEGMENT_SPAN) {
+            long high = Math.min(low + SegmentedSieve.SEGMENT_SPAN, limit + 1);
+            int length = (int) ((high - low + 1) / 2);
+            SegmentedSieve.sieve(low, high, basePrimes, composite);
+            long first = low >>> 1;
+            for (int i = 0; i < length; i++) {
+                if (!composite[i]) {
+                    long bit = first + i;
+                    oddBits[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+        }
+        int total = 1; // 2
+        for (int w = 0; w < words; w++) {
+            countBefore[w] = total;
+            total += Long.bitCount(oddBits[w]);
+        }
+        long listLimit = Math.min(limit, SegmentedSieve.isqrt(limit) * iroot(limit, 4) + 1); // >= limit^(3/4)
+        primes = new int[(int) smallPi(listLimit)];
+        primes[0] = 2;
+        for (int i = 1; i < primes.length; i++) {
+            primes[i] = (int) nextPrime(primes[i - 1]);
+        }
+
+        phiWheel = new short[WHEEL];
+        boolean[] coprime = new boolean[WHEEL];
+        Arrays.fill(coprime, true);
+        coprime[0] = false;
+        for (int p : WHEEL_PRIMES) {
+            for (int j = p; j < WHEEL; j += p) coprime[j] = false;
+        }
+        short running = 0;
+        for (int x = 0; x < WHEEL; x++) {
+            if (coprime[x]) running++;
+            phiWheel[x] = running;
+        }
+    }
+
+    // The shared instance is built lazily, the first big query pays the ~6 MB tables once.
+    static PrimeCounting shared() {
+        PrimeCounting counting = shared;
+        if (counting == null) {
+            synchronized (PrimeCounting.class) {
+                counting = shared;
+                if (counting == null) {
+                    counting = new PrimeCounting(SMALL_LIMIT);
+                    shared = counting;
+                }
+            }
+        }
+        return counting;
+    }
+
+    // π(x): the number of primes <= x. The prime list has to reach √x, so x may go up to limit².
+    public long pi(long x) {
+        return pi(x, CancellationToken.none());
+    }
+
+    long pi(long x, CancellationToken token) {
+        if (x <= limit) {
+            return smallPi(x);
+        }
+        if (SegmentedSieve.isqrt(x) >= limit) {
+            throw new IllegalArgumentException("π(" + x + ") needs primes beyond " + limit);
+        }
+        int a = (int) pi(iroot(x, 4), token);
+        int b = (int) pi(SegmentedSieve.isqrt(x), token);
+        int c = (int) pi(iroot(x, 3), token);
+
+        long sum = phi(x, a, token) + (long) (b + a - 2) * (b - a + 1) / 2;
+        long p = primes[a - 1];
+        for (int i = a + 1; i <= b; i++) {
+            token.throwIfCancelled();
+            p = nextPrime(p); // p(i), which may lie past the prime list: up to √x < limit.
+            long w = x / p;
+            sum -= pi(w, token);
+            if (i <= c) {
+                int bi = (int) pi(SegmentedSieve.isqrt(w), token);
+                for (int j = i; j <= bi; j++) {
+                    sum -= pi(w / primes[j - 1], token) - (j - 1);
+                }
+            }
+        }
+        return sum;
+    }
+
+    // The smallest prime after the odd number p, read from the bitmap. p(i) for i > primes.length is only ever needed
+    // in order, so this replaces a list of every prime up to limit.
+    private long nextPrime(long p) {
+        if (p < 3) return 3;
+        long bit = (p >>> 1) + 1;
+        int word = (int) (bit >>> 6);
+        long bits = oddBits[word] & (-1L << bit);
+        while (bits == 0) {
+            bits = oddBits[++word];
+        }
+        return 2 * ((long) word * 64 + Long.numberOfTrailingZeros(bits)) + 1;
+    }
+
+    private long smallPi(long x) {
+        if (x < 2) return 0;
+        long bit = (x - 1) >>> 1; // Largest odd number <= x is 2 * bit + 1.
+        int word = (int) (bit >>> 6);
+        long mask = -1L >>> (63 - (bit & 63));
+        return countBefore[word] + Long.bitCount(oddBits[word] & mask);
+    }
+
+    // φ(x, a), with three shortcuts that cut the recursion short:
+    //	•	a <= 6: the first six primes repeat with period 30030, so φ comes from the precomputed wheel.
+    //	•	x < p(a + 1)²: whatever survives the first a primes is 1 or a prime, so φ = π(x) - a + 1.
+    //	•	otherwise φ(x, a) = φ(x, a - 1) - φ(x / p(a), a - 1), unrolled into a loop down to a = 6.
+    // φ(x, a) is where most of the time goes, so the token is checked on every call that takes the slow path.
+    private long phi(long x, int a, CancellationToken token) {
+        if (x == 0) return 0;
+        if (a <= WHEEL_PRIMES.length) return wheelPhi(x, a);
+        if (x <= limit && x < (long) primes[a] * primes[a]) {
+            return Math.max(1, smallPi(x) - a + 1);
+        }
+        token.throwIfCancelled();
+        long result = wheelPhi(x, WHEEL_PRIMES.length);
+        for (int i = WHEEL_PRIMES.length + 1; i <= a; i++) {
+            long y = x / primes[i - 1];
+            if (y < primes[i - 1]) {
+                // x / p(i) < p(i): each remaining term φ(x / p(j), j - 1) only counts the number 1.
+                result -= a - i + 1;
+                break;
+            }
+            result -= phi(y, i - 1, token);
+        }
+        return result;
+    }
+
+    private long wheelPhi(long x, int a) {
+        if (a == WHEEL_PRIMES.length) {
+            return (x / WHEEL) * WHEEL_TOTIENT + phiWheel[(int) (x % WHEEL)];
+        }
+        if (a == 0) return x;
+        return wheelPhi(x, a - 1) - wheelPhi(x / WHEEL_PRIMES[a - 1], a - 1);
+    }
+
+    // Floor of the kth root.
+    static long iroot(long x, int k) {
+        long r = (long) Math.pow(x, 1.0 / k);
+        while (r > 0 && pow(r, k) > x) r--;
+        while (pow(r + 1, k) <= x) r++;
+        return r;
+    }
+
+    private static long pow(long base, int k) {
+        long result = 1;
+        for (int i = 0; i < k; i++) {
+            if (result > Long.MAX_VALUE / base) return Long.MAX_VALUE;
+            result *= base;
+        }
+        return result;
+    }
+
+    // The logarithmic integral Li(x), from Ramanujan's fast converging series.
+    static double li(double x) {
+        double ln = Math.log(x);
+        double sum = 0;
+        double term = 1;
+        double inner = 0;
+        for (int k = 1; k < 200; k++) {
+            term *= ln / k;
+            if (((k - 1) & 1) == 0) {
+                inner += 1.0 / (2 * ((k - 1) / 2) + 1);
+            }
+            double add = ((k & 1) == 1 ? 1 : -1) * term / Math.pow(2, k - 1) * inner;
+            sum += add;
+            if (Math.abs(add) < 1e-17 * Math.abs(sum)) break;
+        }
+        return 0.5772156649015329 + Math.log(ln) + Math.sqrt(x) * sum;
+    }
+
+    // Li⁻¹(n), by Newton's method (Li'(x) = 1 / ln x).
+    static double inverseLi(double n) {
+        double x = n * Math.log(n);
+        for (int i = 0; i < 100; i++) {
+            double step = (li(x) - n) * Math.log(x);
+            x -= step;
+            if (Math.abs(step) < 0.5) break;
+        }
+        return x;
+    }
+
+    // The nth prime for 1 <= n <= MAX_N (about 1.3 * 10^14). The time to count grows like x^(3/4), so n around 10^12
+    // is the realistic ceiling anyway.
+    long nthPrime(long n, CancellationToken token) {
+        if (n < 1 || n > MAX_N) {
+            throw new IllegalArgumentException("n = " + n + " is out of range, the nth prime is supported for 1 <= n <= "
+                    + MAX_N);
+        }
+        if (n <= primes.length) {
+            return primes[(int) n - 1];
+        }
+        long x = (long) inverseLi(n);
+        long count = pi(x, token);
+        while (count >= n) {
+            // Li(x) > π(x) throughout the range of long, so this is only a safety net.
+            x -= SegmentedSieve.isqrt(x) * 8;
+            count = pi(x, token);
+        }
+
+        long upper = SegmentedSieve.upperBound(n);
+        int[] basePrimes = SegmentedSieve.basePrimes((int) SegmentedSieve.isqrt(upper) + 1);
+        boolean[] composite = new boolean[SegmentedSieve.SEGMENT_SIZE];
+        for (long low = (x + 1) | 1; ; low += SegmentedSieve.SEGMENT_SPAN) { // Starts at the first odd number after x.
+            token.throwIfCancelled();
+            long high = low + SegmentedSieve.SEGMENT_SPAN;
+            int found = SegmentedSieve.sieve(low, high, basePrimes, composite);
+            if (count + found >= n) {
+                return SegmentedSieve.kthInSegment(low, SegmentedSieve.SEGMENT_SIZE, composite, (int) (n - count));
+            }
+            count += found;
+        }
+    }
+}
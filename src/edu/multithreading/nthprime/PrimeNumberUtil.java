@@ -1,19 +1,90 @@
 package edu.multithreading.nthprime;
 
+import java.util.concurrent.ForkJoinPool;
+
 public class PrimeNumberUtil {
+    //The largest n calculatePrime(long) answers, see PrimeCounting.
+    public static final long MAX_N = PrimeCounting.MAX_N;
+    private static final long LARGEST_LONG_PRIME = Long.MAX_VALUE - 24; // 2^63 - 25
+
+    //This used to be a trial division loop (divide every candidate by 2..candidate), which is roughly O(n² log n).
+    //The segmented sieve returns the same answers orders of magnitude faster, see SegmentedSieve. Answers are kept in
+    //the shared PrimeTable, so a repeated (or smaller) n is just an array lookup.
     public static int calculatePrime(int n){
-        int number, numberOfPrimesFound, i;
-        number = 1; numberOfPrimesFound = 0;
+        return PrimeTable.shared().nthPrime(n);
+    }
 
-        while(numberOfPrimesFound<n){
-            number++;
-            for (i = 2; i<= number && number%i !=0; i++){
+    //Batch version: answers all of ns (in their original order) for roughly the cost of the largest one, instead of
+    //one computation per element.
+    public static int[] calculatePrimes(int[] ns){
+        return PrimeTable.shared().nthPrimes(ns);
+    }
 
-            }
-            if (i == number){
-                numberOfPrimesFound++;
-            }
+    //64-bit version: calculatePrime(int) overflows once the answer passes Integer.MAX_VALUE (n above ~105 million).
+    //Up to the size of the prime table the answer still comes from the table, bigger n are counted with Lehmer's
+    //formula and only the last short interval is sieved, see PrimeCounting.
+    public static long calculatePrime(long n){
+        return calculatePrime(n, CancellationToken.none());
+    }
+
+    //Cancellable versions: the computation gives up with a CancellationException once the token is cancelled, its
+    //deadline passes or the thread is interrupted (the versions without a token still react to interrupts).
+    public static int calculatePrime(int n, CancellationToken token){
+        return PrimeTable.shared().nthPrime(n, token);
+    }
+
+    //n < 1 gets the same answer as from the int version; n > MAX_N throws an IllegalArgumentException.
+    public static long calculatePrime(long n, CancellationToken token){
+        if (n < 1) {
+            return PrimeTable.shared().nthPrime(0, token); //Checked before narrowing: (int) n could wrap to a valid n.
+        }
+        if (n <= PrimeTable.MAX_TABLE_SIZE) {
+            return PrimeTable.shared().nthPrime((int) n, token);
+        }
+        return PrimeCounting.shared().nthPrime(n, token);
+    }
+
+    //Parallel mode for a single large n: the sieve segments are spread over the common ForkJoinPool.
+    public static int calculatePrimeParallel(int n){
+        return calculatePrimeParallel(n, ForkJoinPool.commonPool());
+    }
+
+    public static int calculatePrimeParallel(int n, ForkJoinPool pool){
+        return calculatePrimeParallel(n, pool, CancellationToken.none());
+    }
+
+    public static int calculatePrimeParallel(int n, ForkJoinPool pool, CancellationToken token){
+        return SegmentedSieve.nthPrimeParallel(n, pool, token);
+    }
+
+    //Point primality checks, exact for every long (deterministic Miller–Rabin, see MillerRabin).
+    public static boolean isPrime(long number){
+        return MillerRabin.isPrime(number);
+    }
+
+    //The smallest prime greater than number.
+    public static long nextPrime(long number){
+        if (number < 2) return 2;
+        if (number >= LARGEST_LONG_PRIME) {
+            throw new ArithmeticException("There is no prime after " + number + " that fits in a long");
+        }
+        long candidate = (number + 1) | 1; //Only odd candidates from here on.
+        while (!MillerRabin.isPrime(candidate)) {
+            candidate += 2;
+        }
+        return candidate;
+    }
+
+    //The largest prime smaller than number.
+    public static long prevPrime(long number){
+        if (number <= 2) {
+            throw new IllegalArgumentException("There is no prime below " + number);
+        }
+        if (number == 3) return 2;
+        long candidate = (number - 2) | 1; //The largest odd number below number.
+        while (!MillerRabin.isPrime(candidate)) {
+            candidate -= 2;
         }
-        return number;
+        return candidate;
     }
 }
@@ -1,5 +1,9 @@
 package edu.multithreading.nthprime;
 
+import edu.multithreading.metrics.MetricsRegistry;
+import edu.multithreading.metrics.MetricsReporter;
+import edu.multithreading.metrics.StrategyMetrics;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -7,12 +11,17 @@ import java.util.Scanner;
 public class PrimeNumberWithConcurrencyHoldingThreadsMain {
     public static void main(String[] args) {
         List<Thread> threads = new ArrayList<>();
+        //The status report used to print the state of every thread in this list, which only ever grows (and was read
+        //by the reporter while main kept adding to it). Now each request reports its timings to the metrics, and the
+        //reporter prints a summary of the last interval instead. The list is only used by main to join at the end.
+        StrategyMetrics metrics = MetricsRegistry.shared().strategy("thread-per-request");
+        MetricsReporter metricsReporter = new MetricsReporter(MetricsRegistry.shared(), System.out);
         //Interrupt in java is soft interrupt.
         Runnable statusReporter = () -> {
             while (true) {
                 try {
                     Thread.sleep(5000);
-                    printThreads(threads);
+                    metricsReporter.run();
                 }
                 catch (InterruptedException e) {
                     System.out.println("Status report interrupted. Ending status updates.");
@@ -23,6 +32,7 @@ public class PrimeNumberWithConcurrencyHoldingThreadsMain {
                 //since the printThreads(threads) method is outside the try and catch block, and the loop is an infinite loop
                 //it goes on calling the printThreads method with the same old value. To mitigate this issue, we need to
                 //put this printThreads(threads) inside the try block.
+                //(printThreads has since been replaced by metricsReporter.run(), the same reasoning applies to it.)
             }
 
             /*How the Status Reporter Stops:
@@ -126,9 +136,18 @@ public class PrimeNumberWithConcurrencyHoldingThreadsMain {
                 break;
 
             }
+            long submittedAt = metrics.submitted();
             Runnable runnable = new Runnable() {
                 public void run() {
-                    int number = PrimeNumberUtil.calculatePrime(n);
+                    long startedAt = metrics.started(submittedAt);
+                    int number;
+                    try {
+                        number = PrimeNumberUtil.calculatePrime(n);
+                    } catch (RuntimeException | Error e) {
+                        metrics.failed(); //Otherwise the request would stay in flight forever.
+                        throw e;
+                    }
+                    metrics.completed(submittedAt, startedAt);
                     System.out.println("Result is: ");
                     System.out.println("Value of "+n+"th prime: "+number);
                 }
@@ -140,12 +159,6 @@ public class PrimeNumberWithConcurrencyHoldingThreadsMain {
         }
     }
 
-    private static void printThreads(List<Thread> threads) {
-        System.out.println("\nThread Status: ");
-        threads.forEach(thread -> System.out.println(thread.getState()+" "+thread.getName()));
-        System.out.println();
-    }
-
     private static void waitForThreads(List<Thread> threads) {
         for (Thread thread : threads) {
             try {
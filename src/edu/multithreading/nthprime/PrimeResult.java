@@ -0,0 +1,6 @@
+package edu.multithreading.nthprime;
+
+//An answer together with the question it answers. Results that arrive in completion order (not in the order they were
+//asked for) can't rely on their position to tell which n they belong to.
+public record PrimeResult(long n, long prime) {
+}
@@ -0,0 +1,191 @@
+package edu.multithreading.nthprime;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+A process-wide table of the first primes, shared by every thread that calls PrimeNumberUtil.calculatePrime().
+
+	1.	Readers never lock: the table is an IntBuffer (over a primitive int[], or over the memory-mapped table file)
+	    that is never modified once it has been published through the volatile field. A reader does one volatile read
+	    to get the current snapshot and then reads from it with an absolute get(), so a query for n <= table size is an
+	    O(1) lookup.
+	2.	Only one grower: when a request needs more primes than the snapshot holds, the thread takes growLock, sieves
+	    only past the last known prime and publishes the bigger table with a single volatile write.
+	3.	Waiters don't recompute: other threads needing a bigger table block on the same lock. Once they get it, they
+	    re-check the published table (double-checked locking) and usually find their answer already there.
+
+Growth at least doubles the table, so a run of slowly increasing n values does not pay for one extension each. Above
+MAX_TABLE_SIZE the table stops growing (it would cost 4 bytes per prime) and we fall back to sieving per request.
+
+The shared table can be persisted to a PrimeTableFile: set the system property nthprime.table.file to a path the user
+owns. On the next start the primes found by an earlier run are served straight from the mapped file. Without the
+property (the default) the table lives on the heap only; nothing is written to disk, and no file that somebody else
+may have put into a shared directory such as java.io.tmpdir is ever trusted. If an append to the file fails (a full
+disk, or an interrupt, which closes a FileChannel), that extension is kept on the heap and the file is opened again
+on the next growth, which catches it up.
+ */
+public final class PrimeTable {
+    static final int MAX_TABLE_SIZE = 1 << 24; // 16M primes, 64 MB of ints.
+    static final String FILE_PROPERTY = "nthprime.table.file";
+    private static final int[] SEED = {2, 3, 5, 7, 11, 13};
+    private static final long GROW_LOCK_POLL_MILLIS = 10;
+
+    private static final PrimeTable SHARED = createShared();
+
+    private volatile IntBuffer primes;
+    private final Lock growLock = new ReentrantLock();
+    private final Path location; // Where the table is persisted, null when it lives on the heap only.
+    private PrimeTableFile file; // Only touched while holding growLock, null while the file isn't open.
+
+    // A table that lives on the heap only.
+    public PrimeTable() {
+        this.location = null;
+        this.primes = IntBuffer.wrap(SEED.clone());
+    }
+
+    // A table backed by (and appending to) the table file at location.
+    public PrimeTable(Path location) {
+        this.location = location;
+        this.file = openFile();
+        this.primes = file != null ? file.primes() : IntBuffer.wrap(SEED.clone());
+    }
+
+    public static PrimeTable shared() {
+        return SHARED;
+    }
+
+    private static PrimeTable createShared() {
+        String location = System.getProperty(FILE_PROPERTY, "");
+        return location.isEmpty() ? new PrimeTable() : new PrimeTable(Path.of(location));
+    }
+
+    private PrimeTableFile openFile() {
+        try {
+            return PrimeTableFile.open(location, SEED);
+        } catch (IOException e) {
+            System.err.println("Prime table file not available (" + e.getMessage() + "), keeping the table in memory.");
+            return null;
+        }
+    }
+
+    public int nthPrime(int n) {
+        return nthPrime(n, CancellationToken.none());
+    }
+
+    // Lookups never look at the token, only an extension of the table does. If the thread growing the table is
+    // cancelled nothing is published, and the next waiter takes over the extension.
+    public int nthPrime(int n, CancellationToken token) {
+        if (n < 1) {
+            return 1; // Keeps the answer calculatePrime() has always given for n <= 0.
+        }
+        IntBuffer snapshot = primes;
+        if (n <= snapshot.limit()) {
+            return snapshot.get(n - 1);
+        }
+        if (n > MAX_TABLE_SIZE) {
+            return SegmentedSieve.nthPrime(n, token);
+        }
+        return grow(n, token).get(n - 1);
+    }
+
+    // Answers a whole batch at once: the table is grown a single time, up to the largest n, and the rest are lookups.
+    // Batches that go past MAX_TABLE_SIZE are answered by one sorted pass of the sieve instead.
+    public int[] nthPrimes(int[] ns) {
+        return nthPrimes(ns, CancellationToken.none());
+    }
+
+    public int[] nthPrimes(int[] ns, CancellationToken token) {
+        int max = 0;
+        for (int n : ns) max = Math.max(max, n);
+        if (max > MAX_TABLE_SIZE) {
+            return SegmentedSieve.nthPrimes(ns, token);
+        }
+        IntBuffer snapshot = primes;
+        if (max > snapshot.limit()) {
+            snapshot = grow(max, token);
+        }
+        int[] answers = new int[ns.length];
+        for (int i = 0; i < ns.length; i++) {
+            answers[i] = ns[i] < 1 ? 1 : snapshot.get(ns[i] - 1);
+        }
+        return answers;
+    }
+
+    // How many primes are answered straight from the table right now.
+    public int size() {
+        return primes.limit();
+    }
+
+    private IntBuffer grow(int n, CancellationToken token) {
+        lockForGrowth(token);
+        try {
+            IntBuffer current = primes;
+            int known = current.limit();
+            if (n <= known) {
+                return current; // Somebody else extended the table while we were waiting for the lock.
+            }
+            int target = (int) Math.min(MAX_TABLE_SIZE, Math.max(n, 2L * known));
+            int[] next = SegmentedSieve.nextPrimes(current.get(known - 1), known, target, token);
+            IntBuffer extended = location != null ? appendToFile(current, next) : concat(current, next);
+            primes = extended;
+            return extended;
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    // Growing can take seconds, so waiting for another thread's growth has to stay cancellable: instead of a plain
+    // lock(), try for a short while and check the token (deadline, cancel(), interrupt) between attempts.
+    private void lockForGrowth(CancellationToken token) {
+        while (true) {
+            token.throwIfCancelled();
+            try {
+                if (growLock.tryLock(GROW_LOCK_POLL_MILLIS, TimeUnit.MILLISECONDS)) return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); //The token sees the interrupt on the next round and throws.
+            }
+        }
+    }
+
+    // A failed append closes the file, and the next growth opens it again. The reopened file may hold fewer primes
+    // than the table on the heap; those are appended first.
+    private IntBuffer appendToFile(IntBuffer current, int[] next) {
+        if (file == null) {
+            file = openFile();
+        }
+        if (file != null) {
+            try {
+                int stored = file.primes().limit(), known = current.limit();
+                if (stored < known) {
+                    int[] missing = new int[known - stored];
+                    current.get(stored, missing, 0, missing.length);
+                    file.append(missing);
+                }
+                if (file.primes().limit() == known) {
+                    return file.append(next);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not extend the prime table file (" + e.getMessage() + "), will retry.");
+                try {
+                    file.close();
+                } catch (IOException ignored) {
+                }
+                file = null;
+            }
+        }
+        return concat(current, next);
+    }
+
+    private static IntBuffer concat(IntBuffer current, int[] next) {
+        int known = current.limit();
+        int[] all = new int[known + next.length];
+        current.get(0, all, 0, known);
+        System.arraycopy(next, 0, all, known, next.length);
+        return IntBuffer.wrap(all);
+    }
+}
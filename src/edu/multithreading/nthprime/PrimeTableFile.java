@@ -0,0 +1,164 @@
+package edu.multithreading.nthprime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/*
+The on-disk copy of the PrimeTable, so a restarted JVM doesn't have to sieve its working set again.
+
+File layout (big endian, which is the ByteBuffer default):
+
+	offset  0: int   magic     "PRMT"
+	offset  4: int   version   1
+	offset  8: int   count     number of primes stored
+	offset 12: int   unused
+	offset 16: long  covered   every number up to this one has been sieved (it is the last stored prime)
+	offset 24: long  checksum  CRC32 of the prime data
+	offset 32: int[count]      the first count primes: 2, 3, 5, ...
+
+Why FileChannel.map()?
+
+	•	A memory-mapped file is read through the OS page cache, so opening the table costs nothing on the heap: the
+	    IntBuffer returned by primes() is a view over the mapping and lookups go straight to it.
+	•	The mapping is READ_ONLY. New primes are appended with FileChannel.write() and the file is mapped again over
+	    its new length. Bytes that are already mapped never change, so readers still holding the old mapping are safe.
+	•	Data is written and forced to disk before the header that counts it is written (and forced in turn), so a crash
+	    half way through an append leaves a file whose header still describes valid data (the extra bytes are cut off
+	    on the next open).
+
+Only one process can own the file (FileChannel.tryLock), any other JVM falls back to a heap-only table.
+ */
+public final class PrimeTableFile implements AutoCloseable {
+    private static final int MAGIC = 0x50524D54; // "PRMT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final CRC32 checksum = new CRC32(); // Running CRC of everything stored so far, appends just continue it.
+    private int count;
+    private IntBuffer primes;
+
+    private PrimeTableFile(FileChannel channel, FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    // Opens (or creates) the table file. An unreadable or corrupt file is started over from the seed primes.
+    public static PrimeTableFile open(Path path, int[] seed) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock = channel.tryLock();
+        if (lock == null) {
+            channel.close();
+            throw new IOException(path + " is in use by another process");
+        }
+        PrimeTableFile file = new PrimeTableFile(channel, lock);
+        try {
+            if (!file.load()) {
+                file.reset(seed);
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        return file;
+    }
+
+    // The stored primes as a read-only view over the mapping: primes().get(i) is the (i + 1)th prime.
+    public IntBuffer primes() {
+        return primes;
+    }
+
+    // Appends the next primes (they must continue right after the last stored one) and returns the new, longer view.
+    IntBuffer append(int[] next) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(next.length * Integer.BYTES);
+        data.asIntBuffer().put(next);
+        checksum.update(data.duplicate());
+        long position = HEADER_SIZE + (long) count * Integer.BYTES;
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+        channel.force(false); //The data is on disk before any header points at it.
+        count += next.length;
+        writeHeader(next[next.length - 1]);
+        channel.force(false);
+        primes = map();
+        return primes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            lock.release();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private boolean load() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+        header.flip();
+        int magic = header.getInt();
+        int version = header.getInt();
+        int storedCount = header.getInt();
+        header.getInt();
+        header.getLong();
+        long storedChecksum = header.getLong();
+        if (magic != MAGIC || version != VERSION || storedCount < 2
+                || HEADER_SIZE + (long) storedCount * Integer.BYTES > size) {
+            return false;
+        }
+
+        count = storedCount;
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) count * Integer.BYTES);
+        checksum.update(mapped); // Reads the mapping directly, no copy of the data lands on the heap.
+        if (checksum.getValue() != storedChecksum) {
+            System.err.println("Prime table checksum mismatch, rebuilding it.");
+            checksum.reset();
+            return false;
+        }
+        if (size > HEADER_SIZE + (long) count * Integer.BYTES) {
+            channel.truncate(HEADER_SIZE + (long) count * Integer.BYTES); // Leftovers of an interrupted append.
+        }
+        primes = map();
+        return true;
+    }
+
+    private void reset(int[] seed) throws IOException {
+        channel.truncate(HEADER_SIZE);
+        checksum.reset();
+        count = 0;
+        append(seed);
+    }
+
+    private void writeHeader(long covered) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0).putLong(covered).putLong(checksum.getValue());
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    private IntBuffer map() throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) count * Integer.BYTES).asIntBuffer();
+    }
+}
@@ -0,0 +1,305 @@
+package edu.multithreading.nthprime;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+Segmented Sieve of Eratosthenes
+
+The old calculatePrime() tested every candidate by trial division all the way up to the candidate itself, which is
+roughly O(n² log n) work for the nth prime. A sieve crosses off multiples of each prime instead, which is
+O(x log log x) for all the primes up to x.
+
+A plain sieve needs one flag per number up to x, and once that array is bigger than the CPU caches every crossing-off
+pass goes to main memory. The segmented version only keeps:
+
+	1.	Base primes: the primes up to √x, found with a small ordinary sieve.
+	2.	One segment buffer: a window of SEGMENT_SIZE flags (one per odd number) that fits in the L1/L2 cache. Each
+	    window is sieved with the base primes, counted, and then reused for the next window.
+
+To know where to stop, we need an upper bound for the nth prime before we start:
+	•	Rosser (1941): p(n) < n (ln n + ln ln n) for n >= 6.
+	•	Dusart (1999): p(n) <= n (ln n + ln ln n - 1 + (ln ln n - 2) / ln n) for n >= 688383, which is much tighter.
+ */
+public final class SegmentedSieve {
+    static final int SEGMENT_SIZE = 32 * 1024; // One flag per odd number, so a segment spans 64K numbers.
+    static final long SEGMENT_SPAN = 2L * SEGMENT_SIZE;
+    // π(Integer.MAX_VALUE): the int versions below answer n up to here, the nth prime of anything larger needs a long.
+    public static final int MAX_INT_N = 105_097_565;
+
+    private SegmentedSieve() {
+    }
+
+    // Upper bound for the nth prime (n >= 1), using Rosser's bound and Dusart's sharper one once it applies.
+    public static long upperBound(long n) {
+        if (n < 6) {
+            return 13;
+        }
+        double ln = Math.log(n);
+        double lnln = Math.log(ln);
+        double bound = n >= 688383
+                ? n * (ln + lnln - 1 + (lnln - 2) / ln)
+                : n * (ln + lnln);
+        return (long) Math.ceil(bound) + 1; // +1 guards against rounding in the floating point maths.
+    }
+
+    // A relative measure of how much work the nth prime costs to sieve from scratch: the numbers the sieve covers.
+    // Schedulers use it to balance or order requests, the unit itself doesn't matter.
+    public static long estimatedCost(long n) {
+        return n < 1 ? 1 : upperBound(n);
+    }
+
+    // Floor of the square root, corrected for the rounding of Math.sqrt on large longs. The checks divide instead of
+    // squaring: (r + 1) * (r + 1) overflows for x near Long.MAX_VALUE, and the negative product would pass as <= x.
+    static long isqrt(long x) {
+        long r = (long) Math.sqrt((double) x);
+        while (r > 0 && r > x / r) r--;
+        while (r + 1 <= x / (r + 1)) r++;
+        return r;
+    }
+
+    // Checked before sieving: an n past MAX_INT_N would otherwise only fail after sieving all the way to 2^31.
+    private static void checkFitsInInt(long n) {
+        if (n > MAX_INT_N) {
+            throw new IllegalArgumentException("The " + n + "th prime does not fit in an int, n must be at most "
+                    + MAX_INT_N);
+        }
+    }
+
+    // The odd primes up to limit (2 is left out because the segments only hold odd numbers).
+    static int[] basePrimes(int limit) {
+        if (limit < 3) {
+            return new int[0];
+        }
+        boolean[] composite = new boolean[limit + 1];
+        int[] primes = new int[Math.max(16, (int) (1.3 * limit / Math.log(limit)) + 16)];
+        int count = 0;
+        for (int i = 3; i <= limit; i += 2) {
+            if (composite[i]) continue;
+            primes[count++] = i;
+            for (long j = (long) i * i; j <= limit; j += 2L * i) {
+                composite[(int) j] = true;
+            }
+        }
+        return Arrays.copyOf(primes, count);
+    }
+
+    // Sieves the odd numbers low, low + 2, ... below high into composite[] (index i stands for low + 2i) and returns
+    // how many of them are prime. low must be odd and the base primes must reach √(high - 1).
+    static int sieve(long low, long high, int[] basePrimes, boolean[] composite) {
+        int length = (int) ((high - low + 1) / 2);
+        Arrays.fill(composite, 0, length, false);
+        if (low == 1) {
+            composite[0] = true; // 1 is not a prime.
+        }
+        for (int p : basePrimes) {
+            long square = (long) p * p;
+            if (square >= high) break;
+            long start = Math.max(square, ((low + p - 1) / p) * p);
+            if ((start & 1) == 0) {
+                start += p; // Even multiples were never stored.
+            }
+            for (long j = start; j < high; j += 2L * p) {
+                composite[(int) ((j - low) >>> 1)] = true;
+            }
+        }
+        int primes = 0;
+        for (int i = 0; i < length; i++) {
+            if (!composite[i]) primes++;
+        }
+        return primes;
+    }
+
+    // Returns the kth (1-based) prime left in a segment that has just been sieved.
+    static long kthInSegment(long low, int length, boolean[] composite, int k) {
+        for (int i = 0; i < length; i++) {
+            if (!composite[i] && --k == 0) {
+                return low + 2L * i;
+            }
+        }
+        throw new IllegalStateException("Segment starting at " + low + " has fewer primes than expected");
+    }
+
+    // Returns the primes that follow the first known ones, up to the first count primes (count - known of them).
+    // lastKnown is the last of the known primes and must be odd; sieving starts right after it, so nothing that is
+    // already known gets computed again.
+    static int[] nextPrimes(int lastKnown, int known, int count, CancellationToken token) {
+        int[] primes = new int[count - known];
+        int found = 0;
+        long limit = upperBound(count);
+        int[] basePrimes = basePrimes((int) isqrt(limit));
+        boolean[] composite = new boolean[SEGMENT_SIZE];
+
+        for (long low = lastKnown + 2L; found < primes.length; low += SEGMENT_SPAN) {
+            token.throwIfCancelled();
+            if (low > limit) {
+                throw new IllegalStateException("Upper bound " + limit + " is too small for n = " + count);
+            }
+            long high = Math.min(low + SEGMENT_SPAN, limit + 1);
+            int length = (int) ((high - low + 1) / 2);
+            sieve(low, high, basePrimes, composite);
+            for (int i = 0; i < length && found < primes.length; i++) {
+                if (!composite[i]) primes[found++] = (int) (low + 2L * i);
+            }
+        }
+        return primes;
+    }
+
+    public static int nthPrime(int n) {
+        return nthPrime(n, CancellationToken.none());
+    }
+
+    // The token is checked once per segment, so a cancelled computation stops within a segment's worth of work.
+    public static int nthPrime(int n, CancellationToken token) {
+        if (n < 1) {
+            return 1; // Same answer the old trial division loop gave for n <= 0.
+        }
+        if (n == 1) {
+            return 2;
+        }
+        checkFitsInInt(n);
+        long limit = upperBound(n);
+        int[] basePrimes = basePrimes((int) isqrt(limit));
+        boolean[] composite = new boolean[SEGMENT_SIZE];
+        int count = 1; // 2 is already counted.
+
+        for (long low = 1; low <= limit; low += SEGMENT_SPAN) {
+            token.throwIfCancelled();
+            long high = Math.min(low + SEGMENT_SPAN, limit + 1);
+            int primes = sieve(low, high, basePrimes, composite);
+            if (count + primes >= n) {
+                return (int) kthInSegment(low, (int) ((high - low + 1) / 2), composite, n - count);
+            }
+            count += primes;
+        }
+        throw new IllegalStateException("Upper bound " + limit + " is too small for n = " + n);
+    }
+
+    //Batch mode: answers every n of ns with a single pass of the sieve. The requests are sorted (packed as n << 32 | index
+    //into a long[] so sorting needs no boxing), the sieve runs up to the bound of the largest n, and every time the
+    //running count passes the next requested n its answer is filled in at its original index.
+    public static int[] nthPrimes(int[] ns) {
+        return nthPrimes(ns, CancellationToken.none());
+    }
+
+    public static int[] nthPrimes(int[] ns, CancellationToken token) {
+        int[] answers = new int[ns.length];
+        long[] requests = new long[ns.length];
+        int pending = 0;
+        for (int i = 0; i < ns.length; i++) {
+            if (ns[i] <= 1) {
+                answers[i] = ns[i] == 1 ? 2 : 1;
+            } else {
+                requests[pending++] = (long) ns[i] << 32 | i;
+            }
+        }
+        if (pending == 0) {
+            return answers;
+        }
+        Arrays.sort(requests, 0, pending);
+        checkFitsInInt(requests[pending - 1] >>> 32);
+
+        long limit = upperBound(requests[pending - 1] >>> 32);
+        int[] basePrimes = basePrimes((int) isqrt(limit));
+        boolean[] composite = new boolean[SEGMENT_SIZE];
+        int count = 1; // 2 is already counted.
+        int next = 0;
+        for (long low = 1; next < pending; low += SEGMENT_SPAN) {
+            token.throwIfCancelled();
+            if (low > limit) {
+                throw new IllegalStateException("Upper bound " + limit + " is too small for n = " + (requests[pending - 1] >>> 32));
+            }
+            long high = Math.min(low + SEGMENT_SPAN, limit + 1);
+            int length = (int) ((high - low + 1) / 2);
+            sieve(low, high, basePrimes, composite);
+            for (int i = 0; i < length && next < pending; i++) {
+                if (composite[i]) continue;
+                count++;
+                while (next < pending && (requests[next] >>> 32) == count) {
+                    answers[(int) requests[next++]] = (int) (low + 2L * i);
+                }
+            }
+        }
+        return answers;
+    }
+
+    //Parallel mode: the segments are independent of each other, so instead of walking them one after another we let a
+    //ForkJoinPool sieve and count all of them at once (each leaf task owns its own segment buffer). A prefix sum over
+    //the per-segment counts then tells us which segment holds the nth prime, and only that one segment is sieved again
+    //to pick the prime out.
+    public static int nthPrimeParallel(int n, ForkJoinPool pool) {
+        return nthPrimeParallel(n, pool, CancellationToken.none());
+    }
+
+    // Every leaf task checks the token before each of its segments. The token is shared by all of them, and the first
+    // one that trips completes the whole invoke() with the CancellationException.
+    public static int nthPrimeParallel(int n, ForkJoinPool pool, CancellationToken token) {
+        if (n < 1) {
+            return 1;
+        }
+        if (n == 1) {
+            return 2;
+        }
+        checkFitsInInt(n);
+        long limit = upperBound(n);
+        int[] basePrimes = basePrimes((int) isqrt(limit));
+        int segments = (int) ((limit + SEGMENT_SPAN - 1) / SEGMENT_SPAN);
+        int[] counts = new int[segments];
+        pool.invoke(new SegmentCountTask(limit, basePrimes, counts, 0, segments, token));
+
+        int count = 1; // 2 is already counted.
+        for (int segment = 0; segment < segments; segment++) {
+            if (count + counts[segment] >= n) {
+                long low = 1 + segment * SEGMENT_SPAN;
+                long high = Math.min(low + SEGMENT_SPAN, limit + 1);
+                boolean[] composite = new boolean[SEGMENT_SIZE];
+                sieve(low, high, basePrimes, composite);
+                return (int) kthInSegment(low, (int) ((high - low + 1) / 2), composite, n - count);
+            }
+            count += counts[segment];
+        }
+        throw new IllegalStateException("Upper bound " + limit + " is too small for n = " + n);
+    }
+}
+
+//Counts the primes of the segments [from, to) into counts[], one slot per segment. Ranges are halved until they are
+//small enough to be worth a task of their own, which keeps every worker of the pool busy with a similar amount of work
+//(unlike different values of n, all segments cost about the same).
+class SegmentCountTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final int SEGMENTS_PER_TASK = 8;
+
+    private final long limit;
+    private final int[] basePrimes;
+    private final int[] counts;
+    private final int from;
+    private final int to;
+    private final transient CancellationToken token; //Tasks are never serialized, the token doesn't have to be.
+
+    SegmentCountTask(long limit, int[] basePrimes, int[] counts, int from, int to, CancellationToken token) {
+        this.limit = limit;
+        this.basePrimes = basePrimes;
+        this.counts = counts;
+        this.from = from;
+        this.to = to;
+        this.token = token;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= SEGMENTS_PER_TASK) {
+            boolean[] composite = new boolean[SegmentedSieve.SEGMENT_SIZE];
+            for (int segment = from; segment < to; segment++) {
+                token.throwIfCancelled();
+                long low = 1 + segment * SegmentedSieve.SEGMENT_SPAN;
+                long high = Math.min(low + SegmentedSieve.SEGMENT_SPAN, limit + 1);
+                counts[segment] = SegmentedSieve.sieve(low, high, basePrimes, composite);
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new SegmentCountTask(limit, basePrimes, counts, from, mid, token),
+                new SegmentCountTask(limit, basePrimes, counts, mid, to, token));
+    }
+}
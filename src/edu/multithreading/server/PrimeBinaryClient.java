@@ -0,0 +1,131 @@
+package edu.multithreading.server;
+
+import edu.multithreading.nthprime.PrimeNumberUtil;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+/*
+A blocking client for PrimeNioServer's binary protocol.
+
+send() and receive() are separate so a caller can pipeline: keep sending requests from one thread while another one
+reads the responses, which arrive in the same order. query() is the simple one-request-one-response version. The two
+direct buffers are reused for every request.
+
+main() is a loopback demo: it starts a server in this JVM (or uses port=<p> if one is running already), pipelines
+frames=<f> requests of batch=<b> random n values up to maxN=<m> through one connection, checks every answer and prints
+the throughput.
+ */
+public class PrimeBinaryClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final ByteBuffer request = ByteBuffer.allocateDirect(4 + 8 * PrimeNioServer.MAX_FRAME);
+    private final ByteBuffer response = ByteBuffer.allocateDirect(4 + 8 * PrimeNioServer.MAX_FRAME);
+
+    public PrimeBinaryClient(String host, int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    // Sends ns[offset .. offset + count) as one request, without waiting for the answer.
+    public void send(long[] ns, int offset, int count) throws IOException {
+        if (count < 1 || count > PrimeNioServer.MAX_FRAME) {
+            throw new IllegalArgumentException("A request holds 1 to " + PrimeNioServer.MAX_FRAME + " values");
+        }
+        request.clear();
+        request.putInt(count);
+        for (int i = 0; i < count; i++) {
+            request.putLong(ns[offset + i]);
+        }
+        request.flip();
+        while (request.hasRemaining()) {
+            channel.write(request);
+        }
+    }
+
+    // Reads the next response into primes (from index 0) and returns how many primes it held.
+    public int receive(long[] primes) throws IOException {
+        readFully(4);
+        int count = response.getInt();
+        readFully(8 * count);
+        for (int i = 0; i < count; i++) {
+            primes[i] = response.getLong();
+        }
+        return count;
+    }
+
+    public long[] query(long... ns) throws IOException {
+        send(ns, 0, ns.length);
+        long[] primes = new long[ns.length];
+        receive(primes);
+        return primes;
+    }
+
+    private void readFully(int bytes) throws IOException {
+        response.clear().limit(bytes);
+        while (response.hasRemaining()) {
+            if (channel.read(response) < 0) throw new EOFException("Server closed the connection");
+        }
+        response.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 0, frames = 20_000, batch = 16, maxN = 100_000;
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "port" -> port = Integer.parseInt(pair[1]);
+                case "frames" -> frames = Integer.parseInt(pair[1]);
+                case "batch" -> batch = Integer.parseInt(pair[1]);
+                case "maxN" -> maxN = Integer.parseInt(pair[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        PrimeNioServer server = null;
+        if (port == 0) {
+            server = new PrimeNioServer(0, Runtime.getRuntime().availableProcessors());
+            server.start();
+            port = server.port();
+        }
+
+        long[] ns = new Random(42).longs((long) frames * batch, 1, maxN + 1).toArray();
+        int frameCount = frames, batchSize = batch;
+        try (PrimeBinaryClient client = new PrimeBinaryClient("localhost", port)) {
+            long start = System.nanoTime();
+            //The sender never waits for an answer, the main thread reads them as they come back.
+            Thread sender = new Thread(() -> {
+                try {
+                    for (int f = 0; f < frameCount; f++) {
+                        client.send(ns, f * batchSize, batchSize);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Sending failed: " + e.getMessage());
+                }
+            });
+            sender.start();
+            long[] primes = new long[batchSize];
+            int wrong = 0;
+            for (int f = 0; f < frameCount; f++) {
+                client.receive(primes);
+                for (int i = 0; i < batchSize; i++) {
+                    if (primes[i] != PrimeNumberUtil.calculatePrime(ns[f * batchSize + i])) wrong++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            sender.join();
+            System.out.printf("%d requests of %d values in %.1f ms: %.0f requests/s, %.0f values/s, %d wrong answers%n",
+                    frames, batch, elapsed / 1e6, frames / (elapsed / 1e9), (double) ns.length / (elapsed / 1e9), wrong);
+        } finally {
+            if (server != null) server.close();
+        }
+    }
+}
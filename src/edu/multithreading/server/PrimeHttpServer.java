@@ -0,0 +1,233 @@
+package edu.multithreading.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.multithreading.advancedmultithreading.executorservice.PrimeService;
+import edu.multithreading.metrics.MetricsRegistry;
+import edu.multithreading.metrics.MetricsReporter;
+import edu.multithreading.nthprime.PrimeNumberUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+An HTTP front-end for the nth prime engine, so many clients can ask at the same time instead of one person typing
+into a Scanner.
+
+	GET  /prime?n=1000         ->  7919
+	POST /primes  (body: "10 100 1000", any whitespace)  ->  one prime per line, in the order of the request
+	GET  /metrics              ->  queue wait, compute and end-to-end latency since the metrics were last reset
+	                               (reading them doesn't reset them, so any number of clients can scrape)
+
+Two kinds of threads, each doing what it is good at:
+
+	1.	Virtual threads for the connections: the JDK's HttpServer hands every exchange to its executor, here a
+	    virtual-thread-per-task executor. Reading the request, waiting for the answer and writing the response are
+	    mostly waiting, and a blocked virtual thread costs almost nothing, so thousands of open requests are fine.
+	2.	A bounded pool of platform threads for the sieving: the handler only submits n to a PrimeService (a
+	    shortest-job-first pool with one thread per core) and blocks its virtual thread on the future. However many
+	    clients connect, no more than cores threads compete for the CPU, and cheap queries don't wait behind
+	    expensive ones.
+
+Every query has a deadline. A query not answered in time gets a 503 and its computation is cancelled, so a burst of
+huge n values can't pin the pool forever. Bad input gets a 400, a POST body over MAX_BODY_BYTES a 413 (the body is
+never read past that limit, so one large request can't fill the heap).
+
+Arguments (all optional): port=8080 threads=<cores> timeoutSeconds=30
+ */
+public class PrimeHttpServer implements AutoCloseable {
+    private static final int MAX_BATCH = 10_000;
+    private static final int MAX_BODY_BYTES = MAX_BATCH * 24; //Room for MAX_BATCH values of 20 digits and whitespace.
+
+    private final HttpServer server;
+    private final ExecutorService connectionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final PrimeService primeService;
+    private final long timeoutSeconds;
+    private final MetricsReporter metricsReporter;
+
+    public PrimeHttpServer(int port, PrimeService primeService, long timeoutSeconds) throws IOException {
+        this.primeService = primeService;
+        this.timeoutSeconds = timeoutSeconds;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.setExecutor(connectionExecutor);
+        this.server.createContext("/prime", this::handlePrime);
+        this.server.createContext("/primes", this::handlePrimes);
+        this.server.createContext("/metrics", this::handleMetrics);
+        this.metricsReporter = new MetricsReporter(MetricsRegistry.shared(), System.out);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handlePrime(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Use GET /prime?n=<n>\n");
+                return;
+            }
+            long n;
+            try {
+                n = parseN(queryParameter(exchange.getRequestURI(), "n"));
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+            CompletableFuture<Long> prime = primeService.submit(n, timeoutSeconds, TimeUnit.SECONDS);
+            try {
+                respond(exchange, 200, prime.join() + "\n");
+            } catch (CompletionException e) {
+                respondFailure(exchange, e);
+            }
+        }
+    }
+
+    private void handlePrimes(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Use POST /primes with whitespace separated values of n\n");
+                return;
+            }
+            if (declaredLength(exchange) > MAX_BODY_BYTES) {
+                respond(exchange, 413, "At most " + MAX_BODY_BYTES + " bytes per batch\n");
+                return;
+            }
+            //Read one byte more than allowed, to tell a body of exactly the limit from a longer one (for chunked
+            //requests, which don't announce their length).
+            byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                respond(exchange, 413, "At most " + MAX_BODY_BYTES + " bytes per batch\n");
+                return;
+            }
+            String[] values = new String(body, StandardCharsets.US_ASCII).trim().split("\\s+");
+            if (values.length > MAX_BATCH) {
+                respond(exchange, 400, "At most " + MAX_BATCH + " values per batch\n");
+                return;
+            }
+            //Everything is submitted first, so the whole batch is computed in parallel, then collected in order.
+            List<CompletableFuture<Long>> primes = new ArrayList<>(values.length);
+            try {
+                for (String value : values) {
+                    if (!value.isEmpty()) primes.add(primeService.submit(parseN(value), timeoutSeconds, TimeUnit.SECONDS));
+                }
+            } catch (IllegalArgumentException e) {
+                primes.forEach(prime -> prime.cancel(true));
+                respond(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+            StringBuilder answers = new StringBuilder(primes.size() * 12);
+            try {
+                for (CompletableFuture<Long> prime : primes) {
+                    answers.append(prime.join()).append('\n');
+                }
+            } catch (CompletionException e) {
+                primes.forEach(prime -> prime.cancel(true));
+                respondFailure(exchange, e);
+                return;
+            }
+            respond(exchange, 200, answers.toString());
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            respond(exchange, 200, metricsReporter.snapshotReport());
+        }
+    }
+
+    private static void respondFailure(HttpExchange exchange, CompletionException e) throws IOException {
+        if (e.getCause() instanceof TimeoutException || e.getCause() instanceof CancellationException) {
+            respond(exchange, 503, "Not answered in time\n");
+        } else {
+            respond(exchange, 500, e.getCause() + "\n");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // The raw query is split first and each value decoded afterwards, so an encoded '&' or '=' inside a value can't
+    // break the split.
+    private static String queryParameter(URI uri, String name) {
+        String query = uri.getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                if (pair.startsWith(name + "=")) {
+                    return URLDecoder.decode(pair.substring(name.length() + 1), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        throw new IllegalArgumentException("Missing query parameter " + name);
+    }
+
+    // The Content-Length the client announced, or -1 if it didn't (or sent something that isn't a length).
+    private static long declaredLength(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            return header == null ? -1 : Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long parseN(String value) {
+        try {
+            long n = Long.parseLong(value);
+            if (n >= 1 && n <= PrimeNumberUtil.MAX_N) return n;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("n must be a whole number from 1 to " + PrimeNumberUtil.MAX_N + ", got: "
+                + value);
+    }
+
+    // Stops taking connections, gives the open exchanges a second to finish, then drains the prime service.
+    @Override
+    public void close() {
+        server.stop(1);
+        connectionExecutor.close();
+        primeService.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080, threads = Runtime.getRuntime().availableProcessors();
+        long timeoutSeconds = 30;
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "port" -> port = Integer.parseInt(pair[1]);
+                case "threads" -> threads = Integer.parseInt(pair[1]);
+                case "timeoutSeconds" -> timeoutSeconds = Long.parseLong(pair[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        PrimeHttpServer server = new PrimeHttpServer(port, PrimeService.shortestJobFirst(threads), timeoutSeconds);
+        //The HttpServer's own dispatcher thread keeps the JVM alive after main returns. Ctrl+C runs the hook, which
+        //shuts everything down cleanly.
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        System.out.println("Serving nth primes on http://localhost:" + server.port() + "/prime?n=<n>");
+    }
+}
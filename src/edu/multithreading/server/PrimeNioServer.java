@@ -0,0 +1,297 @@
+package edu.multithreading.server;
+
+import edu.multithreading.nthprime.CancellationToken;
+import edu.multithreading.nthprime.PrimeNumberUtil;
+import edu.multithreading.nthprime.PrimeTable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+A non-blocking server for callers that send a lot of tiny queries, where parsing HTTP would cost more than the
+answer itself.
+
+The protocol is binary and length-prefixed, big-endian like everything in java.nio:
+
+	request:   int count, then count longs (the values of n)          1 <= count <= MAX_FRAME
+	response:  int count, then count longs (the primes, in the same order; 0 for n < 1 or n > PrimeNumberUtil.MAX_N)
+
+	•	Pipelining: a client may send as many requests as it likes without waiting. The responses come back in the
+	    order the requests were sent.
+	•	Batched responses: every response that can be answered from one read() is put into the same buffer and goes
+	    out in a single write().
+
+One selector thread owns every connection. It accepts, reads, parses and writes, and never blocks:
+
+	1.	Fast path: if every n in a request is already in the shared PrimeTable, the answers are O(1) lookups and the
+	    selector thread writes them straight into the connection's output buffer.
+	2.	Slow path: a request that needs sieving is handed to a worker pool, so the selector thread can keep serving
+	    the other connections. That connection stops reading until the answer is back (otherwise its later requests
+	    could be answered first). The worker puts the connection on a queue and wakes the selector up, which then writes
+	    the answers and carries on with the requests already read.
+	3.	A slow-path request that fails, or isn't answered within SLOW_PATH_TIMEOUT_SECONDS, closes its connection: the
+	    protocol has no error frame, and the client must not wait for an answer that will never come. n outside the
+	    supported range never gets that far, it is answered with 0 right away.
+	4.	Backpressure: a request is only taken from the input buffer when its response fits into the output buffer.
+	    If the client doesn't read its responses, the server stops reading from that client, and TCP slows the
+	    client down.
+
+Nothing is allocated per request: every connection gets its two direct ByteBuffers and its arrays for the slow path
+once, when it connects, and reuses them for every request after that.
+
+See PrimeBinaryClient for a client, and a loopback demo in its main.
+ */
+public class PrimeNioServer implements AutoCloseable {
+    public static final int MAX_FRAME = 4096;
+    private static final int FRAME_BYTES = 4 + 8 * MAX_FRAME;
+    private static final long SLOW_PATH_TIMEOUT_SECONDS = 30;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    private final Queue<Connection> slowPathDone = new ConcurrentLinkedQueue<>();
+    private final Thread selectorThread;
+    private volatile boolean running = true;
+
+    public PrimeNioServer(int port, int workerThreads) throws IOException {
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.workers = Executors.newFixedThreadPool(workerThreads);
+        this.selectorThread = new Thread(this::selectLoop, "prime-nio-selector");
+    }
+
+    public void start() {
+        selectorThread.start();
+    }
+
+    public int port() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    private void selectLoop() {
+        try {
+            while (running) {
+                selector.select();
+                for (Connection connection = slowPathDone.poll(); connection != null; connection = slowPathDone.poll()) {
+                    connection.finishSlowPath();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) connection.read();
+                        if (key.isValid() && key.isWritable()) connection.flushAndProcess();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Selector failed: " + e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    //Everything in here runs on the selector thread, except run(), which is the slow path on a worker.
+    //n the server doesn't compute: answered with 0.
+    private static boolean outOfRange(long n) {
+        return n < 1 || n > PrimeNumberUtil.MAX_N;
+    }
+
+    private final class Connection implements Runnable {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(FRAME_BYTES);
+        private final ByteBuffer out = ByteBuffer.allocateDirect(2 * FRAME_BYTES);
+        private final long[] slowNs = new long[MAX_FRAME];
+        private final long[] slowPrimes = new long[MAX_FRAME];
+        private int slowCount;
+        private boolean slowPathFailed; //Written by the worker before it queues us, read after we're taken off.
+        private boolean waitingForWorker;
+        private SelectionKey key;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            int read;
+            try {
+                read = channel.read(in);
+            } catch (IOException e) {
+                read = -1; //Connection reset by the client.
+            }
+            if (read < 0) {
+                closeConnection();
+                return;
+            }
+            process();
+        }
+
+        //Answers as many complete requests from the input buffer as we can, then writes the answers out.
+        void process() throws IOException {
+            in.flip();
+            while (!waitingForWorker && in.remaining() >= 4) {
+                int start = in.position();
+                int count = in.getInt(start);
+                if (count < 1 || count > MAX_FRAME) {
+                    closeConnection(); //Not speaking our protocol.
+                    return;
+                }
+                if (in.remaining() < 4 + 8 * count || out.remaining() < 4 + 8 * count) {
+                    break; //Request not complete yet, or no room for its response until we've written some out.
+                }
+                in.position(start + 4);
+                if (allInTable(start + 4, count)) {
+                    PrimeTable table = PrimeTable.shared();
+                    out.putInt(count);
+                    for (int i = 0; i < count; i++) {
+                        long n = in.getLong();
+                        out.putLong(outOfRange(n) ? 0 : table.nthPrime((int) n));
+                    }
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        slowNs[i] = in.getLong();
+                    }
+                    slowCount = count;
+                    waitingForWorker = true;
+                    workers.execute(this);
+                }
+            }
+            in.compact();
+            flush();
+        }
+
+        private boolean allInTable(int position, int count) {
+            int known = PrimeTable.shared().size();
+            for (int i = 0; i < count; i++) {
+                long n = in.getLong(position + 8 * i);
+                if (n > known && !outOfRange(n)) return false;
+            }
+            return true;
+        }
+
+        //Hands the connection back to the selector thread whatever happens, or it would wait for us forever.
+        @Override
+        public void run() {
+            slowPathFailed = true;
+            try {
+                CancellationToken token = CancellationToken.withTimeout(SLOW_PATH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                for (int i = 0; i < slowCount; i++) {
+                    slowPrimes[i] = outOfRange(slowNs[i]) ? 0 : PrimeNumberUtil.calculatePrime(slowNs[i], token);
+                }
+                slowPathFailed = false;
+            } catch (RuntimeException e) { //Timed out, cancelled by shutdownNow(), or a bug.
+                System.err.println("Slow path failed, closing the connection: " + e);
+            } finally {
+                slowPathDone.add(this);
+                selector.wakeup();
+            }
+        }
+
+        //process() made sure the response fits before handing the request to the worker.
+        void finishSlowPath() throws IOException {
+            if (!channel.isOpen()) return;
+            if (slowPathFailed) {
+                closeConnection();
+                return;
+            }
+            out.putInt(slowCount);
+            for (int i = 0; i < slowCount; i++) {
+                out.putLong(slowPrimes[i]);
+            }
+            waitingForWorker = false;
+            process(); //Carries on with the requests that arrived in the meantime.
+        }
+
+        void flushAndProcess() throws IOException {
+            flush();
+            if (channel.isOpen() && !waitingForWorker) process();
+        }
+
+        private void flush() throws IOException {
+            if (!channel.isOpen()) return;
+            out.flip();
+            try {
+                channel.write(out);
+            } catch (IOException e) {
+                closeConnection();
+                return;
+            }
+            out.compact();
+            //Read only while there is room to read into and we aren't waiting for a worker. Ask for OP_WRITE only
+            //while some of the output is still waiting for the socket.
+            int interest = 0;
+            if (!waitingForWorker && in.hasRemaining()) interest |= SelectionKey.OP_READ;
+            if (out.position() > 0) interest |= SelectionKey.OP_WRITE;
+            key.interestOps(interest);
+        }
+
+        private void closeConnection() throws IOException {
+            key.cancel();
+            channel.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 9090, workers = Runtime.getRuntime().availableProcessors();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "port" -> port = Integer.parseInt(pair[1]);
+                case "workers" -> workers = Integer.parseInt(pair[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        PrimeNioServer server = new PrimeNioServer(port, workers);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException ignored) {
+            }
+        }));
+        server.start();
+        System.out.println("Serving nth primes (binary protocol) on port " + server.port());
+    }
+}
@@ -0,0 +1,131 @@
+package edu.multithreading.sink;
+
+import java.io.PrintStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+A ResultSink that takes the printing off the workers.
+
+Every PrintStream method is synchronized. When each worker prints its own results, all of them queue up on that one
+lock (and on the write() system call made under it), so at high rates the workers spend their time waiting for the
+console instead of computing. Here:
+
+	1.	emit() only adds the line to a ConcurrentLinkedQueue, which needs no lock: a worker never waits for another
+	    worker or for the console.
+	2.	A single writer thread takes what has piled up in the queue, joins up to batchSize lines into one String and
+	    prints it with one print() call: one lock acquisition and one write() for a whole batch of lines. It is the
+	    only thread on the stream's lock, apart from whatever else still uses the stream directly (the prompts, for
+	    instance).
+	3.	Periodic flush: the writer sleeps up to flushInterval between batches, so a single result shows up within
+	    flushInterval. When batchSize lines are waiting it is woken up right away instead.
+	4.	close() wakes the writer, waits until it has written everything emitted before, and stops it. A line emitted
+	    while or after the sink closes is written by the emitting thread itself.
+
+The lines of one thread keep their order; lines of different threads are interleaved in the order they reached the
+queue. The queue has no bound: a writer that can't keep up (a slow terminal) lets it grow.
+ */
+public final class AsyncBatchingSink implements ResultSink {
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 20;
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private static final class Console {
+        static final AsyncBatchingSink SINK = new AsyncBatchingSink(System.out);
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(SINK::close, "console-sink-shutdown"));
+        }
+    }
+
+    private final PrintStream out;
+    private final long flushIntervalNanos;
+    private final int batchSize;
+    private final Queue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder linesWritten = new LongAdder();
+    private final LongAdder batchesWritten = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public AsyncBatchingSink(PrintStream out) {
+        this(out, DEFAULT_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_BATCH_SIZE);
+    }
+
+    public AsyncBatchingSink(PrintStream out, long flushInterval, TimeUnit unit, int batchSize) {
+        this.out = out;
+        this.flushIntervalNanos = unit.toNanos(flushInterval);
+        this.batchSize = batchSize;
+        this.writer = new Thread(this::writeLoop, "result-sink-writer");
+        this.writer.setDaemon(true); //Doesn't keep the JVM alive; close() is what makes sure everything is written.
+        this.writer.start();
+    }
+
+    static AsyncBatchingSink console() {
+        return Console.SINK;
+    }
+
+    @Override
+    public void emit(String line) {
+        queue.offer(line);
+        //Checked after the offer: either close() hadn't started yet, and its final drain finds our line, or it had,
+        //and we drain it ourselves. No line is left behind in the queue either way.
+        if (closed) {
+            writeBatches(new StringBuilder());
+            return;
+        }
+        if (waiting.incrementAndGet() == batchSize) {
+            LockSupport.unpark(writer); //A full batch: no reason to wait for the rest of the interval.
+        }
+    }
+
+    private void writeLoop() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            boolean closing = closed; //Read before draining: whatever was emitted before close() is in the queue now.
+            writeBatches(batch);
+            if (closing) return;
+            LockSupport.parkNanos(this, flushIntervalNanos);
+        }
+    }
+
+    //Everything in the queue, batchSize lines per print() so the StringBuilder stays small. Only the writer thread
+    //calls this while the sink is open, so the lock is never contended then; after close() it keeps the drains of
+    //late emit() calls from interleaving their lines.
+    private synchronized void writeBatches(StringBuilder batch) {
+        int lines;
+        do {
+            lines = 0;
+            for (String line; lines < batchSize && (line = queue.poll()) != null; lines++) {
+                batch.append(line).append(System.lineSeparator());
+            }
+            if (lines == 0) return;
+            waiting.addAndGet(-lines);
+            out.print(batch);
+            batch.setLength(0);
+            linesWritten.add(lines);
+            batchesWritten.increment();
+        } while (lines == batchSize);
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeBatches(new StringBuilder()); //Lines from emit() calls that were already past their offer.
+    }
+
+    @Override
+    public String toString() {
+        return linesWritten.sum() + " lines written in " + batchesWritten.sum() + " batches";
+    }
+}
@@ -0,0 +1,37 @@
+package edu.multithreading.sink;
+
+import java.io.PrintStream;
+
+//Where the front-ends send their answers instead of calling System.out.println from every worker. See
+//AsyncBatchingSink for why.
+public interface ResultSink extends AutoCloseable {
+
+    // One line of output, without the line break.
+    void emit(String line);
+
+    // Writes out whatever was emitted and not written yet. emit() still works afterwards, but is no longer buffered:
+    // a line emitted while or after the sink closes is written on the emitting thread before emit() returns. (The
+    // console sink closes when the JVM exits, and workers that are still running then mustn't lose their lines.)
+    @Override
+    void close();
+
+    // The shared asynchronous sink on System.out. It is closed (and everything in it written) when the JVM exits.
+    static ResultSink console() {
+        return AsyncBatchingSink.console();
+    }
+
+    // The old way, for comparison: every emit() is a println() on the caller's thread, under the stream's lock.
+    static ResultSink direct(PrintStream out) {
+        return new ResultSink() {
+            @Override
+            public void emit(String line) {
+                out.println(line);
+            }
+
+            @Override
+            public void close() {
+                out.flush();
+            }
+        };
+    }
+}